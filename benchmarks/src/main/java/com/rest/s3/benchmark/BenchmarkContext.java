@@ -0,0 +1,52 @@
+package com.rest.s3.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import com.rest.s3.S3Application;
+
+import software.amazon.awssdk.services.s3.S3Client;
+
+// Boots the real application context against an in-memory H2 database (PostgreSQL mode) and the in-memory S3 stand-in
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    public static ConfigurableApplicationContext start(Map<String, Object> overrides) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", "jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        properties.put("spring.jpa.open-in-view", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.put("aws.accessKey", "benchmark");
+        properties.put("aws.secretKey", "benchmark");
+        properties.put("aws.region", "us-east-1");
+        properties.put("aws.s3.bucketName", "benchmark");
+        properties.putAll(overrides);
+
+        return new SpringApplicationBuilder(S3Application.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties)
+                .run();
+    }
+
+    @Configuration
+    static class InMemoryS3Config {
+
+        @Bean
+        @Primary
+        public S3Client inMemoryS3Client() {
+            return new InMemoryS3Client();
+        }
+    }
+}
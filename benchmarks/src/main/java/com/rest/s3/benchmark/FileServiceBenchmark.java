@@ -0,0 +1,113 @@
+package com.rest.s3.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.rest.s3.model.FileSummary;
+import com.rest.s3.model.UserData;
+import com.rest.s3.repository.UserRepo;
+import com.rest.s3.service.DownloadOptions;
+import com.rest.s3.service.FileDownload;
+import com.rest.s3.service.FileService;
+
+// Upload, download and listing throughput of FileService, with latency percentiles from SampleTime
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class FileServiceBenchmark {
+
+    private static final String FILE_NAME = "bench.png";
+    private static final String CONTENT_TYPE = "image/png";
+
+    @Param({ "16384", "1048576" })
+    public int fileSize;
+
+    @Param({ "true", "false" })
+    public boolean cacheEnabled;
+
+    @Param({ "1000" })
+    public int seededFiles;
+
+    private ConfigurableApplicationContext context;
+    private FileService fileService;
+    private InMemoryMultipartFile file;
+    private Long userId;
+    private long firstSeededId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        context = BenchmarkContext.start(Map.of("aws.s3.cache.enabled", cacheEnabled));
+        fileService = context.getBean(FileService.class);
+
+        UserData user = new UserData();
+        user.setUsername("benchmark");
+        user.setEmail("benchmark@example.com");
+        userId = context.getBean(UserRepo.class).save(user).getId();
+
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        file = new InMemoryMultipartFile("file", FILE_NAME, CONTENT_TYPE, content);
+
+        for (int i = 0; i < seededFiles; i++) {
+            fileService.uploadFile(file, userId);
+        }
+        Map<String, Object> oldest = fileService.getFilesAfter(userId, null, seededFiles, false);
+        firstSeededId = idOfLast(oldest);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String uploadFile() throws IOException {
+        return fileService.uploadFile(file, userId);
+    }
+
+    @Benchmark
+    public int downloadFile() throws IOException {
+        long attachmentId = firstSeededId + ThreadLocalRandom.current().nextInt(seededFiles);
+        FileDownload download = fileService.downloadFile(FILE_NAME, userId, attachmentId, DownloadOptions.NONE);
+        download.writeTo(OutputStream.nullOutputStream());
+        return download.getStatus();
+    }
+
+    @Benchmark
+    public Map<String, Object> getFiles() {
+        return fileService.getFiles(userId, 1 + ThreadLocalRandom.current().nextInt(seededFiles / 15), 15);
+    }
+
+    @Benchmark
+    public Map<String, Object> getFilesAfter() {
+        return fileService.getFilesAfter(userId, null, 15, false);
+    }
+
+    // Listings are newest first, so the last entry of a full listing is the first seeded file
+    private static long idOfLast(Map<String, Object> listing) {
+        List<?> files = (List<?>) listing.get("files");
+        return ((FileSummary) files.get(files.size() - 1)).id();
+    }
+}
@@ -0,0 +1,224 @@
+package com.rest.s3.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+// In-process S3 stand-in: objects live in a map, so benchmarks measure the service code rather than the network.
+// Only the operations the application calls are implemented; everything else keeps the SDK's unsupported default.
+public class InMemoryS3Client implements S3Client {
+
+    // Sorted like S3 so listings page in key order
+    private final NavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, Map<Integer, byte[]>> multipartUploads = new ConcurrentHashMap<>();
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody requestBody) {
+        byte[] data = read(requestBody);
+        StoredObject object = store(request.key(), data);
+        return PutObjectResponse.builder().eTag(object.eTag).build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        multipartUploads.put(uploadId, new TreeMap<>());
+        return CreateMultipartUploadResponse.builder().bucket(request.bucket()).key(request.key()).uploadId(uploadId).build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody requestBody) {
+        byte[] data = read(requestBody);
+        Map<Integer, byte[]> parts = multipartUploads.get(request.uploadId());
+        synchronized (parts) {
+            parts.put(request.partNumber(), data);
+        }
+        return UploadPartResponse.builder().eTag("\"" + request.partNumber() + "\"").build();
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        Map<Integer, byte[]> parts = multipartUploads.remove(request.uploadId());
+        int size = 0;
+        synchronized (parts) {
+            for (byte[] part : parts.values()) {
+                size += part.length;
+            }
+            byte[] data = new byte[size];
+            int offset = 0;
+            for (byte[] part : parts.values()) {
+                System.arraycopy(part, 0, data, offset, part.length);
+                offset += part.length;
+            }
+            StoredObject object = store(request.key(), data);
+            return CompleteMultipartUploadResponse.builder().key(request.key()).eTag(object.eTag).build();
+        }
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        multipartUploads.remove(request.uploadId());
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    @Override
+    public <ReturnT> ReturnT getObject(GetObjectRequest request,
+            ResponseTransformer<GetObjectResponse, ReturnT> responseTransformer) {
+        StoredObject object = find(request.key());
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentLength((long) object.data.length)
+                .eTag(object.eTag)
+                .lastModified(object.lastModified)
+                .build();
+        try {
+            return responseTransformer.transform(response, AbortableInputStream.create(new ByteArrayInputStream(object.data)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        StoredObject object = find(request.key());
+        return HeadObjectResponse.builder()
+                .contentLength((long) object.data.length)
+                .eTag(object.eTag)
+                .lastModified(object.lastModified)
+                .build();
+    }
+
+    @Override
+    public ListObjectsV2Response listObjectsV2(ListObjectsV2Request request) {
+        int maxKeys = request.maxKeys() != null ? request.maxKeys() : 1000;
+        Map<String, StoredObject> tail = request.startAfter() != null ? objects.tailMap(request.startAfter(), false) : objects;
+        List<S3Object> contents = new ArrayList<>();
+        boolean truncated = false;
+        for (Map.Entry<String, StoredObject> entry : tail.entrySet()) {
+            if (request.prefix() != null && !entry.getKey().startsWith(request.prefix())) {
+                continue;
+            }
+            if (contents.size() == maxKeys) {
+                truncated = true;
+                break;
+            }
+            StoredObject object = entry.getValue();
+            contents.add(S3Object.builder().key(entry.getKey()).size((long) object.data.length).eTag(object.eTag)
+                    .lastModified(object.lastModified).build());
+        }
+        return ListObjectsV2Response.builder().contents(contents).keyCount(contents.size()).isTruncated(truncated).build();
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        objects.remove(request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public DeleteObjectsResponse deleteObjects(DeleteObjectsRequest request) {
+        for (ObjectIdentifier object : request.delete().objects()) {
+            objects.remove(object.key());
+        }
+        return DeleteObjectsResponse.builder().build();
+    }
+
+    @Override
+    public CopyObjectResponse copyObject(CopyObjectRequest request) {
+        StoredObject object = find(request.sourceKey());
+        objects.put(request.destinationKey(), new StoredObject(object.data, object.eTag, Instant.now()));
+        return CopyObjectResponse.builder().build();
+    }
+
+    public boolean contains(String key) {
+        return objects.containsKey(key);
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        objects.clear();
+        multipartUploads.clear();
+    }
+
+    private StoredObject find(String key) {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            throw NoSuchKeyException.builder().statusCode(404)
+                    .awsErrorDetails(AwsErrorDetails.builder().errorCode("NoSuchKey").errorMessage("The specified key does not exist.").build())
+                    .build();
+        }
+        return object;
+    }
+
+    // Backdate an object, e.g. to put it past a grace period
+    public void setLastModified(String key, Instant lastModified) {
+        objects.computeIfPresent(key, (k, object) -> new StoredObject(object.data, object.eTag, lastModified));
+    }
+
+    private StoredObject store(String key, byte[] data) {
+        StoredObject object = new StoredObject(data, "\"" + Integer.toHexString(Arrays.hashCode(data)) + "\"", Instant.now());
+        objects.put(key, object);
+        return object;
+    }
+
+    private static byte[] read(RequestBody requestBody) {
+        try (InputStream in = requestBody.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record StoredObject(byte[] data, String eTag, Instant lastModified) {
+    }
+}
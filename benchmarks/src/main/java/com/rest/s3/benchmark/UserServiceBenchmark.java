@@ -0,0 +1,67 @@
+package com.rest.s3.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.rest.s3.model.UserData;
+import com.rest.s3.service.UserService;
+
+// UserService.saveUser for new users (validation + two lookups + insert) and for email updates of an existing user
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(Map.of());
+        userService = context.getBean(UserService.class);
+        userService.saveUser(user("existing", "existing0@example.com"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserData saveNewUser() {
+        long n = sequence.incrementAndGet();
+        return userService.saveUser(user("user" + n, "user" + n + "@example.com"));
+    }
+
+    @Benchmark
+    public UserData updateEmail() {
+        return userService.saveUser(user("existing", "existing" + sequence.incrementAndGet() + "@example.com"));
+    }
+
+    private static UserData user(String username, String email) {
+        UserData user = new UserData();
+        user.setUsername(username);
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,107 @@
+package com.rest.s3.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.StringUtils;
+
+import com.rest.s3.model.UserData;
+import com.rest.s3.service.UserValidator;
+
+// UserValidator against the previous regex-based rules (kept here as the baseline), for a valid user
+// and for one that fails on the last rule, so every check runs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserValidatorBenchmark {
+
+    @Param({ "valid", "badUsername" })
+    public String input;
+
+    private final UserValidator validator = new UserValidator();
+    private UserData user;
+
+    @Setup
+    public void setUp() {
+        user = new UserData();
+        user.setUsername("valid".equals(input) ? "alice42" : "1alice");
+        user.setEmail("alice.smith+s3@mail.example.com");
+    }
+
+    @Benchmark
+    public boolean validator() {
+        try {
+            validator.validate(user);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public boolean legacyRegex() {
+        try {
+            LegacyValidation.validateUser(user);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // The rules as UserService implemented them before UserValidator
+    static final class LegacyValidation {
+
+        static void validateUser(UserData user) {
+            if (!StringUtils.hasText(user.getUsername())) {
+                throw new IllegalArgumentException("Username cannot be empty");
+            }
+            if (!StringUtils.hasText(user.getEmail())) {
+                throw new IllegalArgumentException("Email cannot be empty");
+            }
+            if (user.getUsername().length() < 3 || user.getUsername().length() > 20) {
+                throw new IllegalArgumentException("Username must be between 3 and 20 characters.");
+            }
+            if (!user.getEmail().matches("^[A-Za-z][A-Za-z0-9._%+-]*@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$")) {
+                throw new IllegalArgumentException("Invalid email format.");
+            }
+            if (user.getEmail().contains(" ")) {
+                throw new IllegalArgumentException("Email cannot contain whitespace.");
+            }
+            if (user.getEmail().length() - user.getEmail().replace("@", "").length() > 1) {
+                throw new IllegalArgumentException("Email cannot contain more than one '@' symbol.");
+            }
+            if (!user.getEmail().substring(user.getEmail().indexOf('@') + 1).contains(".")) {
+                throw new IllegalArgumentException("Email domain is invalid.");
+            }
+            if (user.getEmail().length() > 254) {
+                throw new IllegalArgumentException("Email is too long. Maximum length is 254 characters.");
+            }
+            String localPart = user.getEmail().split("@")[0];
+            if (localPart.length() > 0 && Character.isDigit(localPart.charAt(0))) {
+                throw new IllegalArgumentException("Email cannot start with a number.");
+            }
+            if (user.getUsername().contains(" ")) {
+                throw new IllegalArgumentException("Username cannot contain spaces.");
+            }
+            if (user.getUsername().matches(".*[^a-zA-Z0-9].*")) {
+                throw new IllegalArgumentException("Username cannot contain special characters.");
+            }
+            if (!Character.isLetter(user.getUsername().charAt(0))) {
+                throw new IllegalArgumentException("Username must start with a letter.");
+            }
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.rest.s3;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@PropertySource("classpath:s3-defaults.properties")
+@EnableScheduling
 public class S3Application {
 
 	public static void main(String[] args) {
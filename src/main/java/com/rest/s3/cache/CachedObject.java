@@ -0,0 +1,120 @@
+package com.rest.s3.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+// A cached copy of an S3 object, held either on the heap or in a memory-mapped file of the disk tier
+public abstract class CachedObject {
+
+    private final long length;
+    private final String eTag;
+    private final Instant lastModified;
+    private final long expiresAtNanos;
+
+    CachedObject(long length, String eTag, Instant lastModified, long expiresAtNanos) {
+        this.length = length;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    boolean isExpired(long nowNanos) {
+        return nowNanos - expiresAtNanos > 0;
+    }
+
+    long expiresAtNanos() {
+        return expiresAtNanos;
+    }
+
+    // Open a stream over [offset, offset + count) of the cached bytes
+    public abstract InputStream openStream(long offset, long count) throws IOException;
+
+    static final class InMemory extends CachedObject {
+
+        private final byte[] data;
+
+        InMemory(byte[] data, String eTag, Instant lastModified, long expiresAtNanos) {
+            super(data.length, eTag, lastModified, expiresAtNanos);
+            this.data = data;
+        }
+
+        byte[] data() {
+            return data;
+        }
+
+        @Override
+        public InputStream openStream(long offset, long count) {
+            return new ByteArrayInputStream(data, (int) offset, (int) count);
+        }
+    }
+
+    static final class OnDisk extends CachedObject {
+
+        private final Path file;
+
+        OnDisk(Path file, long length, String eTag, Instant lastModified, long expiresAtNanos) {
+            super(length, eTag, lastModified, expiresAtNanos);
+            this.file = file;
+        }
+
+        Path file() {
+            return file;
+        }
+
+        @Override
+        public InputStream openStream(long offset, long count) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, count);
+                return new ByteBufferInputStream(mapped);
+            }
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
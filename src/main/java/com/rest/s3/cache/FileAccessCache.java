@@ -0,0 +1,95 @@
+package com.rest.s3.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.rest.s3.model.FileAccess;
+
+// Bounded LRU cache of attachmentId -> owner/type/name used to authorize downloads without a DB round trip
+@Component
+public class FileAccessCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Long, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public FileAccessCache(@Value("${files.accessCache.maxEntries:100000}") int maxEntries,
+            @Value("${files.accessCache.ttl:5m}") Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > FileAccessCache.this.maxEntries;
+            }
+        };
+    }
+
+    // Return the cached access record, loading (and caching) it on a miss; null if the loader finds nothing.
+    // The load runs outside the lock behind a placeholder entry; an invalidate (or another load) meanwhile replaces
+    // the placeholder, and the loaded record, which may predate the change, is then returned but not cached.
+    public FileAccess get(Long attachmentId, Function<Long, FileAccess> loader) {
+        if (maxEntries <= 0) {
+            return loader.apply(attachmentId);
+        }
+        long now = System.nanoTime();
+        Entry loading = new Entry(null, now);
+        synchronized (entries) {
+            Entry entry = entries.get(attachmentId);
+            if (entry != null && entry.access != null && now - entry.expiresAtNanos < 0) {
+                hits.incrementAndGet();
+                return entry.access;
+            }
+            entries.put(attachmentId, loading);
+        }
+        misses.incrementAndGet();
+        FileAccess access = null;
+        try {
+            access = loader.apply(attachmentId);
+        } finally {
+            synchronized (entries) {
+                if (entries.get(attachmentId) == loading) {
+                    if (access != null) {
+                        entries.put(attachmentId, new Entry(access, now + ttlNanos));
+                    } else {
+                        entries.remove(attachmentId);
+                    }
+                }
+            }
+        }
+        return access;
+    }
+
+    public void invalidate(Long attachmentId) {
+        synchronized (entries) {
+            entries.remove(attachmentId);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    // A null access marks a load in progress
+    private record Entry(FileAccess access, long expiresAtNanos) {
+    }
+}
@@ -0,0 +1,446 @@
+package com.rest.s3.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import software.amazon.awssdk.http.Abortable;
+
+// Read-through cache of S3 objects keyed by object key. Small objects live on the heap in a
+// W-TinyLFU tier (LRU admission window + frequency-gated main region); larger objects and objects
+// evicted from the heap spill to a size-bounded LRU directory that is read through memory mapping.
+@Component
+public class ObjectCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ObjectCache.class);
+
+    private final boolean enabled;
+    private final long memoryMaxObjectSize;
+    private final long diskMaxObjectSize;
+    private final long ttlNanos;
+
+    private final MemoryTier memory;
+    private final DiskTier disk;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ObjectCache(@Value("${aws.s3.cache.enabled:true}") boolean enabled,
+            @Value("${aws.s3.cache.memory.maxSize:64MB}") DataSize memoryMaxSize,
+            @Value("${aws.s3.cache.memory.maxObjectSize:256KB}") DataSize memoryMaxObjectSize,
+            @Value("${aws.s3.cache.disk.maxSize:1GB}") DataSize diskMaxSize,
+            @Value("${aws.s3.cache.disk.maxObjectSize:64MB}") DataSize diskMaxObjectSize,
+            @Value("${aws.s3.cache.disk.dir:${java.io.tmpdir}/s3-object-cache}") Path diskDir,
+            @Value("${aws.s3.cache.ttl:10m}") Duration ttl) throws IOException {
+        if (diskMaxObjectSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("aws.s3.cache.disk.maxObjectSize must be below 2GB.");
+        }
+        this.enabled = enabled;
+        this.memoryMaxObjectSize = memoryMaxObjectSize.toBytes();
+        this.diskMaxObjectSize = diskMaxSize.toBytes() > 0 ? diskMaxObjectSize.toBytes() : 0;
+        this.ttlNanos = ttl.toNanos();
+        this.memory = new MemoryTier(memoryMaxSize.toBytes(), this.memoryMaxObjectSize);
+        this.disk = new DiskTier(diskDir, diskMaxSize.toBytes());
+        if (enabled && this.diskMaxObjectSize > 0) {
+            disk.clear();
+        }
+    }
+
+    // Look up a cached object, or null on a miss
+    public CachedObject get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.nanoTime();
+        CachedObject cached = memory.get(key, now);
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            return cached;
+        }
+        cached = disk.get(key, now);
+        if (cached != null) {
+            diskHits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Wrap an S3 body so the bytes are captured into the cache as the client reads them.
+    // The entry is committed only once the whole object has been read.
+    public InputStream capture(String key, InputStream source, long length, String eTag, Instant lastModified) {
+        if (!enabled || length < 0 || length > Math.max(diskMaxObjectSize, memoryMaxObjectSize)) {
+            return source;
+        }
+        try {
+            if (length <= memoryMaxObjectSize) {
+                return new CapturingInputStream(source, key, length, eTag, lastModified, new ByteArrayOutputStream((int) length), null);
+            }
+            Path tempFile = disk.newTempFile();
+            return new CapturingInputStream(source, key, length, eTag, lastModified, Files.newOutputStream(tempFile), tempFile);
+        } catch (IOException e) {
+            log.warn("Not caching {}: {}", key, e.getMessage());
+            return source;
+        }
+    }
+
+    // Drop any cached copy, e.g. after the object was re-uploaded or deleted
+    public void invalidate(String key) {
+        memory.remove(key);
+        disk.remove(key);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getMemorySize() {
+        return memory.weightedSize();
+    }
+
+    public long getDiskSize() {
+        return disk.weightedSize();
+    }
+
+    private void commitToMemory(String key, byte[] data, String eTag, Instant lastModified) {
+        CachedObject.InMemory entry = new CachedObject.InMemory(data, eTag, lastModified, System.nanoTime() + ttlNanos);
+        for (Map.Entry<String, CachedObject.InMemory> evicted : memory.put(key, entry)) {
+            spillToDisk(evicted.getKey(), evicted.getValue());
+        }
+    }
+
+    private void commitToDisk(String key, Path tempFile, long length, String eTag, Instant lastModified) throws IOException {
+        evictions.addAndGet(disk.put(key, tempFile, length, eTag, lastModified, System.nanoTime() + ttlNanos));
+    }
+
+    // Objects pushed out of the heap tier get a second chance on disk
+    private void spillToDisk(String key, CachedObject.InMemory evicted) {
+        if (evicted.getLength() > diskMaxObjectSize || evicted.isExpired(System.nanoTime())) {
+            evictions.incrementAndGet();
+            return;
+        }
+        try {
+            Path tempFile = disk.newTempFile();
+            Files.write(tempFile, evicted.data());
+            evictions.addAndGet(disk.put(key, tempFile, evicted.getLength(), evicted.getETag(), evicted.getLastModified(),
+                    evicted.expiresAtNanos()));
+        } catch (IOException e) {
+            evictions.incrementAndGet();
+            log.warn("Failed to spill {} to disk cache: {}", key, e.getMessage());
+        }
+    }
+
+    // Tees the S3 body into a memory buffer or temp file while the client consumes it
+    private final class CapturingInputStream extends FilterInputStream implements Abortable {
+
+        private final String key;
+        private final long length;
+        private final String eTag;
+        private final Instant lastModified;
+        private final OutputStream sink;
+        private final Path tempFile;
+        private long captured;
+        private boolean failed;
+
+        CapturingInputStream(InputStream source, String key, long length, String eTag, Instant lastModified,
+                OutputStream sink, Path tempFile) {
+            super(source);
+            this.key = key;
+            this.length = length;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.sink = sink;
+            this.tempFile = tempFile;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                capture(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                capture(b, off, n);
+            }
+            return n;
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            if (failed) {
+                return;
+            }
+            try {
+                sink.write(b, off, len);
+                captured += len;
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                finish();
+            }
+        }
+
+        @Override
+        public void abort() {
+            failed = true;
+            if (in instanceof Abortable abortable) {
+                abortable.abort();
+            }
+        }
+
+        private void finish() {
+            try {
+                sink.close();
+                if (!failed && captured == length) {
+                    if (tempFile == null) {
+                        commitToMemory(key, ((ByteArrayOutputStream) sink).toByteArray(), eTag, lastModified);
+                    } else {
+                        commitToDisk(key, tempFile, length, eTag, lastModified);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to cache {}: {}", key, e.getMessage());
+            }
+            if (tempFile != null) {
+                disk.deleteQuietly(tempFile);
+            }
+        }
+    }
+
+    // Heap tier: a small LRU window admits new entries, which then compete with the main region's
+    // LRU victims on estimated access frequency before they may displace them
+    private static final class MemoryTier {
+
+        private final long windowMaxSize;
+        private final long mainMaxSize;
+        private final LinkedHashMap<String, CachedObject.InMemory> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, CachedObject.InMemory> main = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private long windowSize;
+        private long mainSize;
+
+        MemoryTier(long maxSize, long maxObjectSize) {
+            this.windowMaxSize = Math.min(maxSize, Math.max(maxSize / 100, maxObjectSize));
+            this.mainMaxSize = maxSize - windowMaxSize;
+            this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE / 2, Math.max(16, maxSize / 4096)));
+        }
+
+        synchronized CachedObject get(String key, long now) {
+            sketch.increment(key);
+            CachedObject.InMemory entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            if (entry != null && entry.isExpired(now)) {
+                remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        // Returns the entries evicted to make room, for spilling to the disk tier
+        synchronized List<Map.Entry<String, CachedObject.InMemory>> put(String key, CachedObject.InMemory entry) {
+            List<Map.Entry<String, CachedObject.InMemory>> evicted = new ArrayList<>();
+            remove(key);
+            if (entry.getLength() > windowMaxSize) {
+                return evicted;
+            }
+            window.put(key, entry);
+            windowSize += entry.getLength();
+            while (windowSize > windowMaxSize) {
+                Iterator<Map.Entry<String, CachedObject.InMemory>> eldest = window.entrySet().iterator();
+                Map.Entry<String, CachedObject.InMemory> candidate = eldest.next();
+                eldest.remove();
+                windowSize -= candidate.getValue().getLength();
+                admit(candidate, evicted);
+            }
+            return evicted;
+        }
+
+        private void admit(Map.Entry<String, CachedObject.InMemory> candidate, List<Map.Entry<String, CachedObject.InMemory>> evicted) {
+            long candidateSize = candidate.getValue().getLength();
+            int candidateFrequency = sketch.frequency(candidate.getKey());
+            List<Map.Entry<String, CachedObject.InMemory>> victims = new ArrayList<>();
+            long freed = 0;
+            Iterator<Map.Entry<String, CachedObject.InMemory>> lru = main.entrySet().iterator();
+            while (mainSize - freed + candidateSize > mainMaxSize) {
+                if (!lru.hasNext()) {
+                    evicted.add(candidate);
+                    return;
+                }
+                Map.Entry<String, CachedObject.InMemory> victim = lru.next();
+                if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                    // The candidate is less popular than what it would displace
+                    evicted.add(candidate);
+                    return;
+                }
+                victims.add(Map.entry(victim.getKey(), victim.getValue()));
+                freed += victim.getValue().getLength();
+            }
+            for (Map.Entry<String, CachedObject.InMemory> victim : victims) {
+                main.remove(victim.getKey());
+                evicted.add(victim);
+            }
+            mainSize -= freed;
+            main.put(candidate.getKey(), candidate.getValue());
+            mainSize += candidateSize;
+        }
+
+        synchronized void remove(String key) {
+            CachedObject.InMemory removed = window.remove(key);
+            if (removed != null) {
+                windowSize -= removed.getLength();
+            }
+            removed = main.remove(key);
+            if (removed != null) {
+                mainSize -= removed.getLength();
+            }
+        }
+
+        synchronized long weightedSize() {
+            return windowSize + mainSize;
+        }
+    }
+
+    // Disk tier: files in a private directory, evicted in LRU order once the size bound is exceeded
+    private static final class DiskTier {
+
+        private static final String TEMP_SUFFIX = ".tmp";
+        private static final String ENTRY_SUFFIX = ".obj";
+
+        private final Path dir;
+        private final long maxSize;
+        private final LinkedHashMap<String, CachedObject.OnDisk> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long size;
+
+        DiskTier(Path dir, long maxSize) {
+            this.dir = dir;
+            this.maxSize = maxSize;
+        }
+
+        // Entries are only indexed in memory, so files left by a previous run are discarded. Only the cache's
+        // own files are touched, in case the directory is shared with anything else.
+        void clear() throws IOException {
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir)) {
+                files.filter(DiskTier::isCacheFile).forEach(this::deleteQuietly);
+            }
+        }
+
+        private static boolean isCacheFile(Path file) {
+            String name = file.getFileName().toString();
+            return Files.isRegularFile(file) && (name.endsWith(TEMP_SUFFIX) || name.endsWith(ENTRY_SUFFIX));
+        }
+
+        Path newTempFile() {
+            return dir.resolve(UUID.randomUUID() + TEMP_SUFFIX);
+        }
+
+        synchronized CachedObject get(String key, long now) {
+            CachedObject.OnDisk entry = entries.get(key);
+            if (entry != null && entry.isExpired(now)) {
+                remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        // Returns the number of entries evicted
+        long put(String key, Path tempFile, long length, String eTag, Instant lastModified, long expiresAtNanos) throws IOException {
+            Path file = dir.resolve(UUID.randomUUID() + ENTRY_SUFFIX);
+            Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+            CachedObject.OnDisk entry = new CachedObject.OnDisk(file, length, eTag, lastModified, expiresAtNanos);
+            List<Path> deletions = new ArrayList<>();
+            synchronized (this) {
+                CachedObject.OnDisk previous = entries.put(key, entry);
+                if (previous != null) {
+                    size -= previous.getLength();
+                    deletions.add(previous.file());
+                }
+                size += length;
+                Iterator<CachedObject.OnDisk> eldest = entries.values().iterator();
+                while (size > maxSize && eldest.hasNext()) {
+                    CachedObject.OnDisk victim = eldest.next();
+                    eldest.remove();
+                    size -= victim.getLength();
+                    deletions.add(victim.file());
+                }
+            }
+            deletions.forEach(this::deleteQuietly);
+            return deletions.size();
+        }
+
+        void remove(String key) {
+            CachedObject.OnDisk removed;
+            synchronized (this) {
+                removed = entries.remove(key);
+                if (removed != null) {
+                    size -= removed.getLength();
+                }
+            }
+            if (removed != null) {
+                deleteQuietly(removed.file());
+            }
+        }
+
+        synchronized long weightedSize() {
+            return size;
+        }
+
+        void deleteQuietly(Path file) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete cache file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+}
@@ -1,13 +1,29 @@
 package com.rest.s3.config;
 
+import java.time.Duration;
+import java.util.Locale;
+
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.rest.s3.metrics.S3HttpPoolMetrics;
+import com.rest.s3.metrics.S3Metrics;
+
+import io.netty.channel.ChannelOption;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 
 @Configuration
@@ -25,15 +41,146 @@ public class S3Config {
 	@Value("${aws.s3.bucketName}")
     private String awsS3BucketName;
 	
+	// Connection pool and socket settings shared by the sync (Apache) and async (Netty) HTTP clients
+	@Value("${aws.s3.http.maxConnections:200}")
+	private int maxConnections;
+	
+	@Value("${aws.s3.http.connectionAcquisitionTimeout:5s}")
+	private Duration connectionAcquisitionTimeout;
+	
+	@Value("${aws.s3.http.connectionTimeout:2s}")
+	private Duration connectionTimeout;
+	
+	@Value("${aws.s3.http.socketTimeout:30s}")
+	private Duration socketTimeout;
+	
+	@Value("${aws.s3.http.connectionMaxIdleTime:60s}")
+	private Duration connectionMaxIdleTime;
+	
+	// 0 keeps connections until they go idle; a positive value recycles them so load spreads over new S3 endpoints
+	@Value("${aws.s3.http.connectionTimeToLive:0s}")
+	private Duration connectionTimeToLive;
+	
+	@Value("${aws.s3.http.tcpKeepAlive:true}")
+	private boolean tcpKeepAlive;
+	
+	@Value("${aws.s3.http.maxPendingConnectionAcquires:10000}")
+	private int maxPendingConnectionAcquires;
+	
+	// Adaptive mode adds client-side rate limiting on top of the standard backoff once S3 starts throttling
+	@Value("${aws.s3.retry.mode:adaptive}")
+	private String retryMode;
+	
+	@Value("${aws.s3.retry.numRetries:3}")
+	private int numRetries;
+	
+	// Whole-call and per-attempt limits for every operation; 0 disables. Uploads can override the
+	// attempt limit per request (aws.s3.timeouts.uploadAttempt), since a single put can run for minutes.
+	@Value("${aws.s3.timeouts.apiCall:0s}")
+	private Duration apiCallTimeout;
+	
+	@Value("${aws.s3.timeouts.apiCallAttempt:0s}")
+	private Duration apiCallAttemptTimeout;
+	
+	// MD5 validation of put/get payloads; costs CPU on every byte transferred
+	@Value("${aws.s3.checksumValidation:true}")
+	private boolean checksumValidation;
+	
 	@Bean
-	public S3Client s3Client() {
+	public S3Client s3Client(S3Metrics s3Metrics, S3HttpPoolMetrics poolMetrics) {
 		AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(awsAcessKey, awsSecretKey);
 				return S3Client.builder()
 		                .region(Region.of(awsRegion))  
 		                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))  
+		                .httpClientBuilder(apacheHttpClient())
+		                .serviceConfiguration(serviceConfiguration())
+		                .overrideConfiguration(overrideConfiguration(s3Metrics, poolMetrics))
 		                .build();
 	}
 	
+	// Apache sets TCP_NODELAY on its sockets itself
+	private ApacheHttpClient.Builder apacheHttpClient() {
+		ApacheHttpClient.Builder builder = ApacheHttpClient.builder()
+				.maxConnections(maxConnections)
+				.connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+				.connectionTimeout(connectionTimeout)
+				.socketTimeout(socketTimeout)
+				.connectionMaxIdleTime(connectionMaxIdleTime)
+				.useIdleConnectionReaper(true)
+				.tcpKeepAlive(tcpKeepAlive);
+		if (isPositive(connectionTimeToLive)) {
+			builder.connectionTimeToLive(connectionTimeToLive);
+		}
+		return builder;
+	}
+	
+	private NettyNioAsyncHttpClient.Builder nettyHttpClient() {
+		NettyNioAsyncHttpClient.Builder builder = NettyNioAsyncHttpClient.builder()
+				.maxConcurrency(maxConnections)
+				.maxPendingConnectionAcquires(maxPendingConnectionAcquires)
+				.connectionAcquisitionTimeout(connectionAcquisitionTimeout)
+				.connectionTimeout(connectionTimeout)
+				.readTimeout(socketTimeout)
+				.writeTimeout(socketTimeout)
+				.connectionMaxIdleTime(connectionMaxIdleTime)
+				.useIdleConnectionReaper(true)
+				.tcpKeepAlive(tcpKeepAlive)
+				.putChannelOption(ChannelOption.TCP_NODELAY, true);
+		if (isPositive(connectionTimeToLive)) {
+			builder.connectionTimeToLive(connectionTimeToLive);
+		}
+		return builder;
+	}
+	
+	private S3Configuration serviceConfiguration() {
+		return S3Configuration.builder()
+				.checksumValidationEnabled(checksumValidation)
+				.build();
+	}
+	
+	// Non-blocking client used by the async data path (aws.s3.async.enabled=true)
+	@Bean
+	@ConditionalOnProperty(name = "aws.s3.async.enabled", havingValue = "true")
+	public S3AsyncClient s3AsyncClient(S3Metrics s3Metrics, S3HttpPoolMetrics poolMetrics) {
+		AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(awsAcessKey, awsSecretKey);
+		return S3AsyncClient.builder()
+				.region(Region.of(awsRegion))
+				.credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+				.httpClientBuilder(nettyHttpClient())
+				.serviceConfiguration(serviceConfiguration())
+				.overrideConfiguration(overrideConfiguration(s3Metrics, poolMetrics))
+				.build();
+	}
+	
+	// Retry policy and timeouts; every call is timed by the metrics interceptor and reports pool usage to the publisher
+	private ClientOverrideConfiguration overrideConfiguration(S3Metrics s3Metrics, S3HttpPoolMetrics poolMetrics) {
+		ClientOverrideConfiguration.Builder builder = ClientOverrideConfiguration.builder()
+				.retryPolicy(RetryPolicy.builder(RetryMode.valueOf(retryMode.toUpperCase(Locale.ROOT))).numRetries(numRetries).build())
+				.addExecutionInterceptor(s3Metrics)
+				.addMetricPublisher(poolMetrics);
+		if (isPositive(apiCallTimeout)) {
+			builder.apiCallTimeout(apiCallTimeout);
+		}
+		if (isPositive(apiCallAttemptTimeout)) {
+			builder.apiCallAttemptTimeout(apiCallAttemptTimeout);
+		}
+		return builder.build();
+	}
+	
+	private static boolean isPositive(Duration duration) {
+		return !duration.isZero() && !duration.isNegative();
+	}
+	
+	// Signs URLs locally so clients can GET/PUT objects directly against S3
+	@Bean
+	public S3Presigner s3Presigner() {
+		AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(awsAcessKey, awsSecretKey);
+		return S3Presigner.builder()
+				.region(Region.of(awsRegion))
+				.credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+				.build();
+	}
+	
 	@Bean
     public String getBucketName() {
         return awsS3BucketName;
@@ -0,0 +1,58 @@
+package com.rest.s3.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// One-off schema fixes the JPA schema update cannot express, applied at startup (PostgreSQL)
+@Component
+public class SchemaMaintenance implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(SchemaMaintenance.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public SchemaMaintenance(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		alignSequence("file_data", "file_data_seq", 50);
+		alignSequence("users", "users_seq", 50);
+		executeDdl("create unique index if not exists ux_users_lower_username on users (lower(username))");
+		executeDdl("create unique index if not exists ux_users_lower_email on users (lower(email))");
+		// Filename search: prefix matches per user, and substring matches through trigrams (needs the pg_trgm extension)
+		executeDdl("create index if not exists idx_file_data_user_lower_name on file_data (user_id, lower(file_name) text_pattern_ops)");
+		executeDdl("create extension if not exists pg_trgm");
+		executeDdl("create index if not exists idx_file_data_lower_name_trgm on file_data using gin (lower(file_name) gin_trgm_ops)");
+		// A direct upload key belongs to one row, so concurrent completions of the same upload cannot both insert.
+		// Only direct keys: deduplicated blobs are shared by many rows.
+		executeDdl("create unique index if not exists ux_file_data_direct_storage_key on file_data (storage_key) where storage_key like 'direct/%'");
+	}
+
+	// Expression indexes and extensions cannot be declared on the entity. Failures are logged, not fatal: existing
+	// case-insensitive duplicates make the unique indexes fail until cleaned up, and pg_trgm needs a privileged role.
+	private void executeDdl(String ddl) {
+		try {
+			jdbcTemplate.execute(ddl);
+		} catch (DataAccessException e) {
+			log.warn("Could not apply schema change ({}): {}", ddl, e.getMessage());
+		}
+	}
+
+	// Rows inserted while the id was an identity column are unknown to the new pooled sequence;
+	// move the sequence past them so the next reserved block cannot collide
+	private void alignSequence(String table, String sequence, int allocationSize) {
+		try {
+			jdbcTemplate.queryForList("select setval('" + sequence + "', (select max(id) from " + table + ") + " + allocationSize
+					+ ", false) where (select coalesce(max(id), 0) from " + table + ") >= (select last_value from " + sequence + ")");
+		} catch (DataAccessException e) {
+			log.warn("Could not align sequence {} with {}: {}", sequence, table, e.getMessage());
+		}
+	}
+}
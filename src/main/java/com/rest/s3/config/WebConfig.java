@@ -0,0 +1,48 @@
+package com.rest.s3.config;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import jakarta.annotation.PreDestroy;
+
+// Streamed response bodies (downloads, archives, thumbnails) are written on Spring MVC's async executor,
+// which holds a thread for each transfer until the client has read it all. Boot's default executor has
+// 8 threads and an unbounded queue, so further downloads would wait behind slow clients; this pool grows
+// to streamThreads and rejects beyond streamQueue waiting bodies, which is answered with 503 and Retry-After.
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+	private final ThreadPoolExecutor streamExecutor;
+
+	public WebConfig(@Value("${files.download.streamThreads:200}") int streamThreads,
+			@Value("${files.download.streamQueue:0}") int streamQueue,
+			@Value("${files.download.streamThreadKeepAlive:60s}") Duration keepAlive) {
+		int threads = Math.max(1, streamThreads);
+		BlockingQueue<Runnable> queue = streamQueue > 0 ? new LinkedBlockingQueue<>(streamQueue) : new SynchronousQueue<>();
+		this.streamExecutor = new ThreadPoolExecutor(threads, threads, keepAlive.toMillis(), TimeUnit.MILLISECONDS, queue,
+				new CustomizableThreadFactory("download-stream-"));
+		// Threads are only kept while transfers need them
+		streamExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	@Override
+	public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		configurer.setTaskExecutor(new TaskExecutorAdapter(streamExecutor));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		streamExecutor.shutdown();
+	}
+}
@@ -0,0 +1,125 @@
+package com.rest.s3.controller;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.rest.s3.service.AdmissionControl;
+import com.rest.s3.service.AdmissionControl.Transfer;
+
+// Applies AdmissionControl to upload and download requests before they reach a controller, answering
+// 429 with Retry-After when the user (or the node) is over a limit. The user is taken from the query string
+// only: reading request parameters would make the container parse the whole multipart body first.
+// Requests without a userId there, such as uploads sending it as a form field, are limited by client
+// address instead, so clients behind a shared proxy or NAT share one set of limits (set
+// server.forward-headers-strategy behind a load balancer). Put userId in the query string of uploads before
+// enabling files.admission.enabled. Streamed downloads hold their permit until the async response completes.
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionFilter(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admissionControl.isEnabled() || transfer(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Transfer transfer = transfer(request);
+        AdmissionControl.Admission admission = admissionControl.tryAdmit(transfer, user(request), request.getContentLengthLong());
+        if (!admission.admitted()) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(admission.retryAfterSeconds()));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write("Too many " + transfer.name().toLowerCase(Locale.ROOT) + " requests (" + admission.reason()
+                    + " limit). Please retry later.");
+            return;
+        }
+
+        AdmissionControl.Permit permit = admission.permit();
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(permit));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permit.close();
+            }
+        }
+    }
+
+    // Upload and download endpoints; everything else (listing, search, users, presigned URLs) is not limited here
+    static Transfer transfer(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        if (method.equals("POST") && (path.equals("/api/files/upload") || path.equals("/api/files/upload/stream")
+                || path.equals("/api/files/upload/batch") || path.equals("/api/files/async/upload"))) {
+            return Transfer.UPLOAD;
+        }
+        if (method.equals("GET") && (path.startsWith("/api/files/download/") || path.startsWith("/api/files/async/download/"))) {
+            return Transfer.DOWNLOAD;
+        }
+        if ((method.equals("GET") || method.equals("POST")) && path.equals("/api/files/archive")) {
+            return Transfer.DOWNLOAD;
+        }
+        return null;
+    }
+
+    static String user(HttpServletRequest request) {
+        String userId = request.getQueryString() == null ? null
+                : UriComponentsBuilder.newInstance().query(request.getQueryString()).build().getQueryParams().getFirst("userId");
+        return userId != null && !userId.isBlank() ? "user:" + userId : "ip:" + request.getRemoteAddr();
+    }
+
+    private static final class ReleasingListener implements AsyncListener {
+
+        private final AdmissionControl.Permit permit;
+
+        ReleasingListener(AdmissionControl.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Re-registered by the container when the request is dispatched again
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.rest.s3.controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import com.rest.s3.service.AsyncFileService.AsyncDownload;
+
+// Writes an async download to the servlet response without holding a thread: buffers are requested from the
+// body publisher one at a time and written with servlet non-blocking IO, the next one only once the output
+// has taken the last. A client that goes away or a request that times out cancels the body.
+final class AsyncDownloadWriter implements Subscriber<ByteBuffer>, AsyncListener {
+
+    private final AsyncContext async;
+    private final HttpServletResponse response;
+    private ServletOutputStream out;
+    private Subscription subscription;
+    // Received from the publisher and not yet written
+    private ByteBuffer pending;
+    private boolean requested;
+    private boolean bodyComplete;
+    private boolean draining;
+    private boolean finished;
+
+    AsyncDownloadWriter(AsyncContext async) {
+        this.async = async;
+        this.response = (HttpServletResponse) async.getResponse();
+        async.addListener(this);
+    }
+
+    // Send the download's status and headers, then its body as the publisher delivers it
+    void send(AsyncDownload download, String filename, String contentType) {
+        Publisher<ByteBuffer> body = download.body();
+        synchronized (this) {
+            if (!finished) {
+                ResponseEntity<Void> head = FileController.downloadHeaders(download.download(), filename, contentType).build();
+                response.setStatus(head.getStatusCode().value());
+                head.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+                if (body == null) {
+                    finish();
+                } else {
+                    try {
+                        out = response.getOutputStream();
+                        out.setWriteListener(new WriteListener() {
+
+                            @Override
+                            public void onWritePossible() {
+                                drain();
+                            }
+
+                            // Writing failed, the client has gone away
+                            @Override
+                            public void onError(Throwable t) {
+                                cancel();
+                            }
+                        });
+                    } catch (IOException | RuntimeException e) {
+                        finish();
+                    }
+                }
+            }
+        }
+        // Subscribed even when the response is already finished, so the body is cancelled and its connection released
+        if (body != null) {
+            body.subscribe(this);
+        }
+    }
+
+    // Answer with an error status and a short text body instead of the download
+    synchronized void sendError(int status, String message, boolean retry) {
+        if (finished) {
+            return;
+        }
+        response.setStatus(status);
+        if (retry) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        }
+        if (message != null) {
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            response.setContentType("text/plain;charset=UTF-8");
+            response.setContentLength(bytes.length);
+            try {
+                response.getOutputStream().write(bytes);
+            } catch (IOException e) {
+                // The client is gone
+            }
+        }
+        finish();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null || finished) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer buffer) {
+        synchronized (this) {
+            requested = false;
+            pending = buffer;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            bodyComplete = true;
+        }
+        drain();
+    }
+
+    // The body failed: an error status if nothing has been sent yet, otherwise the response just ends early
+    @Override
+    public synchronized void onError(Throwable t) {
+        if (finished) {
+            return;
+        }
+        if (!response.isCommitted()) {
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        finish();
+    }
+
+    // The connection failed or the request timed out (spring.mvc.async.request-timeout)
+    @Override
+    public void onError(AsyncEvent event) {
+        cancel();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        cancel();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    // Write while the output takes it and request the next buffer once the last one is written. Publishers may
+    // deliver the next buffer from within request, which re-enters here and is picked up by the running loop.
+    private synchronized void drain() {
+        if (draining || finished || out == null || subscription == null) {
+            return;
+        }
+        draining = true;
+        try {
+            while (!finished) {
+                if (pending != null) {
+                    if (!out.isReady()) {
+                        return;
+                    }
+                    write(pending);
+                    pending = null;
+                } else if (bodyComplete) {
+                    // Completing while the last write is still being flushed can corrupt its tail
+                    if (!out.isReady()) {
+                        return;
+                    }
+                    finish();
+                } else if (requested) {
+                    return;
+                } else {
+                    requested = true;
+                    subscription.request(1);
+                }
+            }
+        } catch (IOException e) {
+            cancel();
+        } finally {
+            draining = false;
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            out.write(bytes);
+        }
+    }
+
+    private synchronized void cancel() {
+        if (subscription != null && !bodyComplete) {
+            subscription.cancel();
+        }
+        finish();
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        async.complete();
+    }
+}
@@ -0,0 +1,106 @@
+package com.rest.s3.controller;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.rest.s3.service.AsyncFileService;
+import com.rest.s3.service.FileNotReadyException;
+import com.rest.s3.service.FileService;
+
+// Async variants of the upload/download endpoints: the servlet thread is released while S3 is in flight
+@RestController
+@RequestMapping("/api/files/async")
+@ConditionalOnProperty(name = "aws.s3.async.enabled", havingValue = "true")
+public class AsyncFileController {
+
+    private final AsyncFileService asyncFileService;
+    private final FileService fileService;
+    private final Duration requestTimeout;
+
+    public AsyncFileController(AsyncFileService asyncFileService, FileService fileService,
+            @Value("${spring.mvc.async.request-timeout:30m}") Duration requestTimeout) {
+        this.asyncFileService = asyncFileService;
+        this.fileService = fileService;
+        this.requestTimeout = requestTimeout;
+    }
+
+    // Upload
+    @PostMapping("/upload")
+    public CompletableFuture<ResponseEntity<String>> uploadFile(@RequestParam("file") MultipartFile file, @RequestParam("userId") Long userId) {
+        try {
+            return asyncFileService.uploadFile(file, userId)
+                    .thenApply(ResponseEntity::ok)
+                    .exceptionally(e -> {
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        if (cause instanceof IllegalArgumentException) {
+                            return ResponseEntity.badRequest().body(cause.getMessage());
+                        }
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+                    });
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred."));
+        }
+    }
+
+    // Download. Once authorized the request goes async: the response is written by AsyncDownloadWriter as
+    // S3 delivers the body, so neither a request thread nor a stream thread waits on the transfer.
+    @GetMapping("/download/{filename}")
+    public ResponseEntity<String> downloadFile(@PathVariable String filename, @RequestParam("userId") Long userId, @RequestParam("attachmentId") Long attachmentId,
+            @RequestHeader HttpHeaders requestHeaders, HttpServletRequest request) {
+        String contentType;
+        CompletableFuture<AsyncFileService.AsyncDownload> download;
+        try {
+            contentType = fileService.getFileContentType(filename);
+            download = asyncFileService.downloadFile(filename, userId, attachmentId, FileController.downloadOptions(requestHeaders));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (FileNotReadyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+
+        AsyncContext async = request.startAsync();
+        async.setTimeout(requestTimeout.toMillis());
+        AsyncDownloadWriter writer = new AsyncDownloadWriter(async);
+        download.whenComplete((result, e) -> {
+            if (e == null) {
+                writer.send(result, filename, contentType);
+                return;
+            }
+            // Mapped as FileController maps the failures of the blocking download
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof IllegalArgumentException) {
+                writer.sendError(HttpServletResponse.SC_BAD_REQUEST, cause.getMessage(), false);
+            } else if (cause instanceof FileNotReadyException) {
+                writer.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, cause.getMessage(), true);
+            } else {
+                writer.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, null, false);
+            }
+        });
+        // Handled: the response is completed by the writer
+        return null;
+    }
+}
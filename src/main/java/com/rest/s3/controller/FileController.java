@@ -1,49 +1,87 @@
 package com.rest.s3.controller;
 
-import java.io.InputStream;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
-import java.io.ByteArrayInputStream;
+import java.util.concurrent.RejectedExecutionException;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import com.rest.s3.model.FileAccess;
 import com.rest.s3.model.FileData;
 import com.rest.s3.repository.FileRepo;
 import com.rest.s3.repository.UserRepo;
+import com.rest.s3.service.ArchiveService;
+import com.rest.s3.service.BatchUploadService;
+import com.rest.s3.service.ContentCodec;
+import com.rest.s3.service.DownloadOptions;
+import com.rest.s3.service.FileDeletionService;
+import com.rest.s3.service.FileDownload;
+import com.rest.s3.service.FileNotReadyException;
 import com.rest.s3.service.FileService;
+import com.rest.s3.service.StreamingUploadService;
+import com.rest.s3.service.ThumbnailService;
+import com.rest.s3.service.WriteBehindUploadService;
 
 @RestController
 @RequestMapping("/api/files")
 public class FileController {
 
+    // Request attribute holding a download whose body has not started streaming yet
+    private static final String PENDING_DOWNLOAD = FileController.class.getName() + ".pendingDownload";
+
     private final FileService fileService;
     private final FileRepo fileRepo;
+    private final BatchUploadService batchUploadService;
+    private final StreamingUploadService streamingUploadService;
+    private final ThumbnailService thumbnailService;
+    private final WriteBehindUploadService writeBehindUploadService;
+    private final ArchiveService archiveService;
+    private final FileDeletionService fileDeletionService;
 
     @Autowired
-    public FileController(FileService fileService, UserRepo userRepo, FileRepo fileRepo) {
+    public FileController(FileService fileService, UserRepo userRepo, FileRepo fileRepo, BatchUploadService batchUploadService,
+            StreamingUploadService streamingUploadService, ThumbnailService thumbnailService,
+            WriteBehindUploadService writeBehindUploadService, ArchiveService archiveService, FileDeletionService fileDeletionService) {
         this.fileService = fileService;
         this.fileRepo = fileRepo;
+        this.batchUploadService = batchUploadService;
+        this.streamingUploadService = streamingUploadService;
+        this.thumbnailService = thumbnailService;
+        this.writeBehindUploadService = writeBehindUploadService;
+        this.archiveService = archiveService;
+        this.fileDeletionService = fileDeletionService;
     }
 
     // Upload
     @PostMapping("/upload")
     public ResponseEntity<String> uploadFile(@RequestParam("file") MultipartFile file, @RequestParam("userId") Long userId) {
         try {
+            if (writeBehindUploadService.isEnabled()) {
+                return ResponseEntity.ok(writeBehindUploadService.uploadFile(file, userId));
+            }
             return ResponseEntity.ok(fileService.uploadFile(file, userId));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -52,33 +90,195 @@ public class FileController {
         }
     }
 
-    // List Files
+    // Streaming upload: the multipart body is parsed as it arrives and piped straight to S3.
+    // userId is read from the query string only, since reading request parameters would make
+    // the container parse (and spool) the whole multipart body first.
+    @PostMapping("/upload/stream")
+    public ResponseEntity<?> uploadFileStream(HttpServletRequest request) {
+        try {
+            String userId = UriComponentsBuilder.newInstance().query(request.getQueryString()).build()
+                    .getQueryParams().getFirst("userId");
+            if (userId == null) {
+                throw new IllegalArgumentException("User ID is required.");
+            }
+            return ResponseEntity.ok(streamingUploadService.upload(request.getInputStream(), request.getContentType(), Long.valueOf(userId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+
+    // Batch upload: per-file status for every file in the request
+    @PostMapping("/upload/batch")
+    public ResponseEntity<?> uploadFiles(@RequestParam("files") List<MultipartFile> files, @RequestParam("userId") Long userId) {
+        try {
+            return ResponseEntity.ok(batchUploadService.uploadFiles(files, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+
+    // List Files: offset paging by page number, or keyset paging when a cursor is given ("" for the first page)
     @GetMapping("list")
     public Map<String, Object> listFiles(
             @RequestParam(required = false) Long userId,
-            @RequestParam int page,
-            @RequestParam int size) {
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
+        if (cursor != null) {
+            return fileService.getFilesAfter(userId, cursor, size, includeTotal);
+        }
         return fileService.getFiles(userId, page, size);
     }
 
-    // Download
+    // Search the user's files by name: mode=contains (default) or prefix
+    @GetMapping("/search")
+    public ResponseEntity<?> searchFiles(@RequestParam("userId") Long userId, @RequestParam("q") String query,
+            @RequestParam(required = false) String mode,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "15") int size) {
+        try {
+            return ResponseEntity.ok(fileService.searchFiles(userId, query, mode, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Download, honouring Range, If-None-Match and If-Modified-Since.
+    // With width (and optionally format) an image is returned as a resized variant instead of the original.
     @GetMapping("/download/{filename}")
-    public ResponseEntity<InputStreamResource> downloadFile(@PathVariable String filename, @RequestParam("userId") Long userId, @RequestParam("attachmentId") Long attachmentId) {
+    public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable String filename, @RequestParam("userId") Long userId, @RequestParam("attachmentId") Long attachmentId,
+            @RequestParam(value = "width", required = false) Integer width, @RequestParam(value = "format", required = false) String format,
+            @RequestHeader HttpHeaders requestHeaders, HttpServletRequest request) {
         try {
-            InputStream fileStream = fileService.downloadFile(filename, userId, attachmentId);
-            String contentType = fileService.getFileContentType(filename);
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .body(new InputStreamResource(fileStream));
+            if (width != null) {
+                ThumbnailService.Thumbnail thumbnail = thumbnailService.download(filename, userId, attachmentId, width, format,
+                        downloadOptions(requestHeaders));
+                return downloadResponse(request, thumbnail.download(), thumbnail.fileName(), thumbnail.contentType());
+            }
+            FileDownload download = fileService.downloadFile(filename, userId, attachmentId, downloadOptions(requestHeaders));
+            return downloadResponse(request, download, filename, fileService.getFileContentType(filename));
         } catch (IllegalArgumentException e) {  
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new InputStreamResource(new ByteArrayInputStream(
-                    e.getMessage().getBytes())));  
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(out -> out.write(e.getMessage().getBytes()));
+        } catch (FileNotReadyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(out -> out.write(e.getMessage().getBytes()));
+        } catch (RejectedExecutionException e) {
+            // Thumbnail workers are saturated
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(null);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
+
+    // Bulk download: the files streamed as one ZIP, in the order given. POST takes the ids as a form body
+    // for large selections; authorization errors are reported before any of the archive is sent.
+    @RequestMapping(path = "/archive", method = { RequestMethod.GET, RequestMethod.POST })
+    public ResponseEntity<StreamingResponseBody> downloadArchive(@RequestParam("userId") Long userId,
+            @RequestParam("attachmentIds") List<Long> attachmentIds,
+            @RequestParam(value = "name", defaultValue = "files") String name) {
+        try {
+            List<FileAccess> files = archiveService.authorize(userId, attachmentIds);
+            String archiveName = name.replaceAll("[^A-Za-z0-9._ -]", "_") + ".zip";
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archiveName + "\"")
+                    .contentType(MediaType.parseMediaType("application/zip"))
+                    .body(out -> archiveService.writeArchive(files, out));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(out -> out.write(e.getMessage().getBytes()));
+        } catch (FileNotReadyException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(out -> out.write(e.getMessage().getBytes()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
+    // Delete one file, with its thumbnails
+    @DeleteMapping("/{attachmentId}")
+    public ResponseEntity<String> deleteFile(@PathVariable Long attachmentId, @RequestParam("userId") Long userId) {
+        try {
+            return ResponseEntity.ok(fileDeletionService.deleteFile(userId, attachmentId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+
+    // Bulk delete: the listed attachments, or with all=true every file of the user
+    @DeleteMapping
+    public ResponseEntity<?> deleteFiles(@RequestParam("userId") Long userId,
+            @RequestParam(value = "attachmentIds", required = false) List<Long> attachmentIds,
+            @RequestParam(defaultValue = "false") boolean all) {
+        try {
+            int deleted = all ? fileDeletionService.deleteAllFiles(userId) : fileDeletionService.deleteFiles(userId, attachmentIds);
+            return ResponseEntity.ok(Map.of("deleted", deleted));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+
+    static DownloadOptions downloadOptions(HttpHeaders requestHeaders) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return new DownloadOptions(
+                requestHeaders.getFirst(HttpHeaders.RANGE),
+                ifNoneMatch.isEmpty() ? null : String.join(", ", ifNoneMatch),
+                ifModifiedSince < 0 ? null : Instant.ofEpochMilli(ifModifiedSince),
+                ContentCodec.acceptsGzip(requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING)));
+    }
+
+    // Build the 200/206/304/416 response; the body is copied to the servlet output, never buffered
+    static ResponseEntity<StreamingResponseBody> downloadResponse(HttpServletRequest request, FileDownload download, String filename,
+            String contentType) {
+        ResponseEntity.BodyBuilder response = downloadHeaders(download, filename, contentType);
+        if (download.getBody() == null) {
+            return response.build();
+        }
+        // Released by the exception handler if no thread is free to stream the body
+        request.setAttribute(PENDING_DOWNLOAD, download);
+        return response.body(download::writeTo);
+    }
+
+    // Status and headers of a download response; the entity headers only when a body follows
+    static ResponseEntity.BodyBuilder downloadHeaders(FileDownload download, String filename, String contentType) {
+        // Encoded objects are always sent whole
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(download.getStatus())
+                .header(HttpHeaders.ACCEPT_RANGES, download.isEncodingNegotiated() ? "none" : "bytes");
+        if (download.getETag() != null) {
+            response.eTag(download.getETag());
+        }
+        if (download.getLastModified() != null) {
+            response.lastModified(download.getLastModified());
+        }
+        if (download.isEncodingNegotiated()) {
+            response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        // Set on a 416 too, where it carries the object length
+        if (download.getContentRange() != null) {
+            response.header(HttpHeaders.CONTENT_RANGE, download.getContentRange());
+        }
+        if (download.getBody() == null) {
+            return response;
+        }
+        if (download.getContentLength() >= 0) {
+            response.contentLength(download.getContentLength());
+        }
+        if (download.getContentEncoding() != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, download.getContentEncoding());
+        }
+        return response
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.parseMediaType(contentType));
+    }
+
     // Global Exception Handler for File Size Exceed
     @RestControllerAdvice
     public static class GlobalExceptionHandler {
@@ -87,5 +287,24 @@ public class FileController {
         public ResponseEntity<String> handleFileSizeLimitExceeded(MaxUploadSizeExceededException ex) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("File size exceeds the maximum limit.");
         }
+
+        // A write-behind upload held by another node's spool
+        @ExceptionHandler(FileNotReadyException.class)
+        public ResponseEntity<String> handleFileNotReady(FileNotReadyException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(ex.getMessage());
+        }
+
+        // Every download stream thread is busy (see WebConfig): release the object opened for the response
+        // and replace the download headers already set with a 503
+        @ExceptionHandler(RejectedExecutionException.class)
+        public ResponseEntity<String> handleStreamRejected(RejectedExecutionException ex, HttpServletRequest request,
+                HttpServletResponse response) {
+            if (request.getAttribute(PENDING_DOWNLOAD) instanceof FileDownload download) {
+                download.discard();
+            }
+            response.reset();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("Too many downloads in progress. Please retry later.");
+        }
     }
 }
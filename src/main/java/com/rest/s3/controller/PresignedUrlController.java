@@ -0,0 +1,65 @@
+package com.rest.s3.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.rest.s3.service.FileNotReadyException;
+import com.rest.s3.service.PresignedUrlService;
+
+// Direct-to-S3 transfers: these endpoints only authorize and hand out presigned URLs
+@RestController
+@RequestMapping("/api/files/presigned")
+public class PresignedUrlController {
+
+    private final PresignedUrlService presignedUrlService;
+
+    public PresignedUrlController(PresignedUrlService presignedUrlService) {
+        this.presignedUrlService = presignedUrlService;
+    }
+
+    @PostMapping("/upload")
+    public ResponseEntity<?> presignUpload(@RequestParam("fileName") String fileName, @RequestParam("contentType") String contentType,
+            @RequestParam(value = "size", required = false) Long size, @RequestParam("userId") Long userId) {
+        try {
+            return ResponseEntity.ok(presignedUrlService.presignUpload(fileName, contentType, size, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+
+    // Called by the client after its PUT to the presigned URL succeeded
+    @PostMapping("/upload/complete")
+    public ResponseEntity<?> completeUpload(@RequestParam("key") String key, @RequestParam("userId") Long userId) {
+        try {
+            return ResponseEntity.ok(presignedUrlService.completeUpload(key, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+
+    @GetMapping("/download/{filename}")
+    public ResponseEntity<?> presignDownload(@PathVariable String filename, @RequestParam("userId") Long userId,
+            @RequestParam("attachmentId") Long attachmentId) {
+        try {
+            return ResponseEntity.ok(presignedUrlService.presignDownload(filename, userId, attachmentId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (FileNotReadyException e) {
+            // Not in S3 yet, so there is nothing to sign
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("An unexpected error occurred.");
+        }
+    }
+}
@@ -1,22 +1,29 @@
 package com.rest.s3.controller;
 
+import java.util.List;
+
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.rest.s3.model.UserData;
+import com.rest.s3.model.UserImportResult;
+import com.rest.s3.service.UserImportService;
 import com.rest.s3.service.UserService;
 
 @RestController
 @RequestMapping("/api/files")
 public class UserController {
     private final UserService userService;
+    private final UserImportService userImportService;
     
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService) {
         this.userService = userService;
+        this.userImportService = userImportService;
     }
     
     @PostMapping("addUser")
@@ -30,4 +37,31 @@ public class UserController {
             return new ResponseEntity<>("An unexpected error occurred. Please try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
+    // Bulk import: every row gets its own outcome, in request order
+    @PostMapping("addUsers")
+    public ResponseEntity<?> addUsers(@RequestBody List<UserData> users) {
+        try {
+            List<UserImportResult> results = userImportService.importUsers(users);
+            return new ResponseEntity<>(results, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity<>("An unexpected error occurred. Please try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    // Retention policy: files older than retentionDays are deleted; omit retentionDays to keep them forever
+    @PostMapping("setRetention")
+    public ResponseEntity<String> setRetention(@RequestParam("userId") Long userId,
+            @RequestParam(value = "retentionDays", required = false) Integer retentionDays) {
+        try {
+            userService.setRetention(userId, retentionDays);
+            return new ResponseEntity<>("Retention updated successfully!", HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity<>("An unexpected error occurred. Please try again later.", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 }
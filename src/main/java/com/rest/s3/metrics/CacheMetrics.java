@@ -0,0 +1,47 @@
+package com.rest.s3.metrics;
+
+import org.springframework.stereotype.Component;
+
+import com.rest.s3.cache.FileAccessCache;
+import com.rest.s3.cache.ObjectCache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Exposes the in-process caches with the usual cache.* meter names; values are read from the caches' own counters
+@Component
+public class CacheMetrics implements MeterBinder {
+
+    private final ObjectCache objectCache;
+    private final FileAccessCache fileAccessCache;
+
+    public CacheMetrics(ObjectCache objectCache, FileAccessCache fileAccessCache) {
+        this.objectCache = objectCache;
+        this.fileAccessCache = fileAccessCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", objectCache, ObjectCache::getMemoryHits)
+                .tags("cache", "s3-objects", "result", "hit", "tier", "memory").register(registry);
+        FunctionCounter.builder("cache.gets", objectCache, ObjectCache::getDiskHits)
+                .tags("cache", "s3-objects", "result", "hit", "tier", "disk").register(registry);
+        FunctionCounter.builder("cache.gets", objectCache, ObjectCache::getMisses)
+                .tags("cache", "s3-objects", "result", "miss", "tier", "none").register(registry);
+        FunctionCounter.builder("cache.evictions", objectCache, ObjectCache::getEvictions)
+                .tags("cache", "s3-objects").register(registry);
+        Gauge.builder("cache.size.bytes", objectCache, ObjectCache::getMemorySize)
+                .tags("cache", "s3-objects", "tier", "memory").baseUnit("bytes").register(registry);
+        Gauge.builder("cache.size.bytes", objectCache, ObjectCache::getDiskSize)
+                .tags("cache", "s3-objects", "tier", "disk").baseUnit("bytes").register(registry);
+
+        FunctionCounter.builder("cache.gets", fileAccessCache, FileAccessCache::getHits)
+                .tags("cache", "file-access", "result", "hit", "tier", "memory").register(registry);
+        FunctionCounter.builder("cache.gets", fileAccessCache, FileAccessCache::getMisses)
+                .tags("cache", "file-access", "result", "miss", "tier", "none").register(registry);
+        Gauge.builder("cache.size", fileAccessCache, FileAccessCache::size)
+                .tags("cache", "file-access").register(registry);
+    }
+}
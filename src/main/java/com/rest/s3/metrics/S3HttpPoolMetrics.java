@@ -0,0 +1,104 @@
+package com.rest.s3.metrics;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.MetricRecord;
+
+// Connection pool saturation of the S3 HTTP clients, from the SDK's per-request HTTP metrics:
+//   s3.http.pool.leased / available / pending / max   last reported values, per HTTP client
+//   s3.http.pool.acquire                              time spent waiting for a pooled connection
+// A growing pending count or acquire time means requests are queueing for connections.
+@Component
+public class S3HttpPoolMetrics implements MetricPublisher {
+
+    private final MeterRegistry registry;
+    private final Map<String, PoolState> pools = new ConcurrentHashMap<>();
+
+    public S3HttpPoolMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        record(metricCollection);
+    }
+
+    private void record(MetricCollection collection) {
+        String client = null;
+        Integer leased = null;
+        Integer available = null;
+        Integer pending = null;
+        Integer max = null;
+        Duration acquire = null;
+        for (MetricRecord<?> record : collection) {
+            if (record.metric() == HttpMetric.HTTP_CLIENT_NAME) {
+                client = (String) record.value();
+            } else if (record.metric() == HttpMetric.LEASED_CONCURRENCY) {
+                leased = (Integer) record.value();
+            } else if (record.metric() == HttpMetric.AVAILABLE_CONCURRENCY) {
+                available = (Integer) record.value();
+            } else if (record.metric() == HttpMetric.PENDING_CONCURRENCY_ACQUIRES) {
+                pending = (Integer) record.value();
+            } else if (record.metric() == HttpMetric.MAX_CONCURRENCY) {
+                max = (Integer) record.value();
+            } else if (record.metric() == HttpMetric.CONCURRENCY_ACQUIRE_DURATION) {
+                acquire = (Duration) record.value();
+            }
+        }
+        if (client != null) {
+            PoolState pool = pools.computeIfAbsent(client, PoolState::new);
+            set(pool.leased, leased);
+            set(pool.available, available);
+            set(pool.pending, pending);
+            set(pool.max, max);
+            if (acquire != null) {
+                pool.acquire.record(acquire);
+            }
+        }
+        for (MetricCollection child : collection.children()) {
+            record(child);
+        }
+    }
+
+    private static void set(AtomicInteger gauge, Integer value) {
+        if (value != null) {
+            gauge.set(value);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private final class PoolState {
+
+        final AtomicInteger leased = new AtomicInteger();
+        final AtomicInteger available = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final Timer acquire;
+
+        PoolState(String client) {
+            gauge("s3.http.pool.leased", client, leased);
+            gauge("s3.http.pool.available", client, available);
+            gauge("s3.http.pool.pending", client, pending);
+            gauge("s3.http.pool.max", client, max);
+            acquire = Timer.builder("s3.http.pool.acquire").tag("client", client).publishPercentileHistogram().register(registry);
+        }
+
+        private void gauge(String name, String client, AtomicInteger value) {
+            Gauge.builder(name, value, AtomicInteger::get).tag("client", client).register(registry);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.rest.s3.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.Abortable;
+import software.amazon.awssdk.http.SdkHttpHeaders;
+
+// S3 client instrumentation, registered as an execution interceptor on the S3 clients:
+//   s3.requests          timer per operation and outcome (for streamed GETs, time until the response headers arrive)
+//   s3.bytes             request/response payload sizes per operation and direction
+//   s3.errors            failed calls per operation and S3 error code
+//   s3.requests.active   calls currently executing
+//   s3.transfers.active  uploads and downloaded bodies still streaming
+@Component
+public class S3Metrics implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Long> START = new ExecutionAttribute<>("S3Metrics.start");
+    private static final ExecutionAttribute<Long> REQUEST_BYTES = new ExecutionAttribute<>("S3Metrics.requestBytes");
+
+    private final MeterRegistry registry;
+    private final AtomicInteger activeRequests;
+    private final LongTaskTimer activeUploads;
+    private final LongTaskTimer activeDownloads;
+
+    public S3Metrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.activeRequests = registry.gauge("s3.requests.active", new AtomicInteger());
+        this.activeUploads = LongTaskTimer.builder("s3.transfers.active").tag("direction", "upload").register(registry);
+        this.activeDownloads = LongTaskTimer.builder("s3.transfers.active").tag("direction", "download").register(registry);
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(START, System.nanoTime());
+        activeRequests.incrementAndGet();
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(REQUEST_BYTES, contentLength(context.httpRequest()));
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        String operation = operation(executionAttributes);
+        complete(operation, "success", executionAttributes);
+        recordBytes(operation, "sent", executionAttributes.getAttribute(REQUEST_BYTES));
+        recordBytes(operation, "received", contentLength(context.httpResponse()));
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        String operation = operation(executionAttributes);
+        complete(operation, "error", executionAttributes);
+        Counter.builder("s3.errors")
+                .tag("operation", operation)
+                .tag("code", errorCode(context.exception()))
+                .register(registry)
+                .increment();
+    }
+
+    // Track an upload from start to finish; stop the returned sample when it completes
+    public LongTaskTimer.Sample startUpload() {
+        return activeUploads.start();
+    }
+
+    // Track a downloaded body until it has been fully consumed, closed or aborted
+    public InputStream trackDownload(InputStream body) {
+        return new TrackedInputStream(body, activeDownloads.start());
+    }
+
+    private void complete(String operation, String outcome, ExecutionAttributes executionAttributes) {
+        Long start = executionAttributes.getAttribute(START);
+        if (start == null) {
+            return;
+        }
+        activeRequests.decrementAndGet();
+        Timer.builder("s3.requests")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordBytes(String operation, String direction, Long bytes) {
+        if (bytes == null || bytes <= 0) {
+            return;
+        }
+        DistributionSummary.builder("s3.bytes")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("direction", direction)
+                .register(registry)
+                .record(bytes);
+    }
+
+    private static String operation(ExecutionAttributes executionAttributes) {
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        return operation != null ? operation : "unknown";
+    }
+
+    private static String errorCode(Throwable exception) {
+        if (exception instanceof AwsServiceException e) {
+            if (e.awsErrorDetails() != null && e.awsErrorDetails().errorCode() != null) {
+                return e.awsErrorDetails().errorCode();
+            }
+            return String.valueOf(e.statusCode());
+        }
+        return exception.getClass().getSimpleName();
+    }
+
+    private static Long contentLength(SdkHttpHeaders headers) {
+        return headers.firstMatchingHeader("Content-Length").map(Long::valueOf).orElse(null);
+    }
+
+    private static final class TrackedInputStream extends FilterInputStream implements Abortable {
+
+        private LongTaskTimer.Sample sample;
+
+        TrackedInputStream(InputStream in, LongTaskTimer.Sample sample) {
+            super(in);
+            this.sample = sample;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                stop();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                stop();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stop();
+            super.close();
+        }
+
+        @Override
+        public void abort() {
+            stop();
+            if (in instanceof Abortable abortable) {
+                abortable.abort();
+            }
+        }
+
+        private void stop() {
+            if (sample != null) {
+                sample.stop();
+                sample = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.rest.s3.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A change every node must drop from its caches: a file row (access cache) or an object key (object cache)
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name="cacheInvalidation", indexes = @Index(name = "idx_cache_invalidation_created_on", columnList = "createdOn"))
+public class CacheInvalidation {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cache_invalidation_seq")
+	@SequenceGenerator(name = "cache_invalidation_seq", sequenceName = "cache_invalidation_seq", allocationSize = 50)
+	private Long id;
+	private Long fileId;
+	private String storageKey;
+	private LocalDateTime createdOn;
+
+}
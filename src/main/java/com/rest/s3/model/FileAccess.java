@@ -0,0 +1,7 @@
+package com.rest.s3.model;
+
+// Just the columns needed to authorize and locate a download
+public record FileAccess(Long attachmentId, Long ownerId, String fileName, String fileType, String storageKey, String codec,
+        UploadState state) {
+
+}
@@ -3,11 +3,16 @@ package com.rest.s3.model;
 import java.time.LocalDateTime;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,20 +24,35 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name="fileData")
+// Composite indexes back keyset listing on (lastUpdatedOn, id), per user and overall
+@Table(name="fileData", indexes = {
+		@Index(name = "idx_file_data_user_updated_id", columnList = "user_id, lastUpdatedOn, id"),
+		@Index(name = "idx_file_data_updated_id", columnList = "lastUpdatedOn, id") })
 public class FileData {	
 	
+	// Pooled sequence: ids are reserved 50 at a time, which also lets Hibernate batch the inserts
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_data_seq")
+	@SequenceGenerator(name = "file_data_seq", sequenceName = "file_data_seq", allocationSize = 50)
 	private Long id;
 	private String fileName;
 	private String fileType;
 	
-	@ManyToOne
+	// Listings use FileSummary projections, so the owner is only loaded when actually dereferenced
+	@ManyToOne(fetch = FetchType.LAZY)
 	@JoinColumn(name="user_id")
 	private UserData user;
 	
 	private LocalDateTime lastUpdatedOn;
+	
+	// S3 key of the content; null for legacy rows stored under attachmentId_fileName
+	private String storageKey;
+	// Hex SHA-256 of the content when it is stored as a deduplicated blob
+	private String contentHash;
+	// Storage encoding of the S3 object (ContentCodec.GZIP); null when stored exactly as uploaded
+	private String codec;
+	@Enumerated(EnumType.STRING)
+	private UploadState state;
 
 
 }
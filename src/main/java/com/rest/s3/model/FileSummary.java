@@ -0,0 +1,8 @@
+package com.rest.s3.model;
+
+import java.time.LocalDateTime;
+
+// Row returned by file listings: only the listed columns, no user entity graph
+public record FileSummary(Long id, String fileName, String fileType, LocalDateTime lastUpdatedOn, Long userId) {
+
+}
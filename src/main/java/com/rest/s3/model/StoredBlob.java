@@ -0,0 +1,28 @@
+package com.rest.s3.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A unique piece of content stored once in S3 and shared by every FileData with the same digest
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name="storedBlob")
+public class StoredBlob {
+
+	// Hex SHA-256 of the object bytes
+	@Id
+	private String digest;
+	private String storageKey;
+	private Long size;
+	private long refCount;
+	private LocalDateTime createdOn;
+
+}
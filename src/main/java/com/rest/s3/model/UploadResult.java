@@ -0,0 +1,21 @@
+package com.rest.s3.model;
+
+// Per-file outcome of a batch upload
+public record UploadResult(String fileName, Long attachmentId, Status status, String message) {
+
+    public enum Status {
+        UPLOADED, REJECTED, FAILED
+    }
+
+    public static UploadResult uploaded(String fileName, Long attachmentId) {
+        return new UploadResult(fileName, attachmentId, Status.UPLOADED, "File uploaded successfully: " + fileName);
+    }
+
+    public static UploadResult rejected(String fileName, String message) {
+        return new UploadResult(fileName, null, Status.REJECTED, message);
+    }
+
+    public static UploadResult failed(String fileName, String message) {
+        return new UploadResult(fileName, null, Status.FAILED, message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.rest.s3.model;
+
+// Where the content of a FileData row currently lives; null on rows written before states were tracked (committed)
+public enum UploadState {
+	// Row saved, object upload not finished yet (or failed); hidden from listings until committed
+	PENDING,
+	// Held in the local write-behind spool, not yet in S3
+	SPOOLED,
+	// Stored in S3
+	COMMITTED
+}
@@ -1,8 +1,11 @@
 package com.rest.s3.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -16,11 +19,17 @@ import jakarta.persistence.Id;
 @NoArgsConstructor
 public class UserData {
 	
+	// Pooled sequence so bulk imports insert in JDBC batches, as for FileData
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+	@SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
 	private Long id;
 	private String username;
 	private String email;
+	// Files last updated more than this many days ago are removed by the retention sweeper; null keeps them forever.
+	// Read-only in request bodies: it is set only through the retention endpoint (UserService.setRetention).
+	@JsonProperty(access = JsonProperty.Access.READ_ONLY)
+	private Integer retentionDays;
 	public Long getId() {
 		return id;
 	}
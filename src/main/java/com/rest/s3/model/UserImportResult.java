@@ -0,0 +1,25 @@
+package com.rest.s3.model;
+
+// Per-row outcome of a bulk user import
+public record UserImportResult(String username, Long userId, Status status, String message) {
+
+    public enum Status {
+        CREATED, UPDATED, REJECTED, FAILED
+    }
+
+    public static UserImportResult created(UserData user) {
+        return new UserImportResult(user.getUsername(), user.getId(), Status.CREATED, "User added successfully!");
+    }
+
+    public static UserImportResult updated(UserData user) {
+        return new UserImportResult(user.getUsername(), user.getId(), Status.UPDATED, "User email updated.");
+    }
+
+    public static UserImportResult rejected(String username, String message) {
+        return new UserImportResult(username, null, Status.REJECTED, message);
+    }
+
+    public static UserImportResult failed(String username, String message) {
+        return new UserImportResult(username, null, Status.FAILED, message);
+    }
+}
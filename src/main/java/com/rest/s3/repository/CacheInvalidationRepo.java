@@ -0,0 +1,24 @@
+package com.rest.s3.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rest.s3.model.CacheInvalidation;
+
+public interface CacheInvalidationRepo extends JpaRepository<CacheInvalidation, Long> {
+
+	// Invalidations recorded after a point in time, served by the createdOn index
+	List<CacheInvalidation> findByCreatedOnAfter(LocalDateTime since);
+
+	@Transactional
+	@Modifying
+	@Query("delete from CacheInvalidation i where i.createdOn < :before")
+	int deleteCreatedBefore(@Param("before") LocalDateTime before);
+
+}
@@ -1,6 +1,8 @@
 package com.rest.s3.repository;
 
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -8,9 +10,16 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.util.Streamable;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.rest.s3.model.FileAccess;
 import com.rest.s3.model.FileData;
+import com.rest.s3.model.FileSummary;
+import com.rest.s3.model.UploadState;
 import com.rest.s3.model.UserData;
 
 import java.util.Optional;
@@ -31,6 +40,107 @@ public interface FileRepo extends JpaRepository<FileData, Long> {
 
 	Page<FileData> findByUserId(Long userId, Pageable pageable);
 
+	// Rows whose upload has not completed are left out of listings and their counts
+	String LISTED = "(f.state is null or f.state <> com.rest.s3.model.UploadState.PENDING)";
+
+	@Query("select count(f) from FileData f where f.user.id = :userId and " + LISTED)
+	long countByUserId(@Param("userId") Long userId);
+
+	@Query("select count(f) from FileData f where " + LISTED)
+	long countListed();
+
+	// Single projection query used to authorize downloads
+	@Query("select new com.rest.s3.model.FileAccess(f.id, f.user.id, f.fileName, f.fileType, f.storageKey, f.codec, f.state) from FileData f where f.id = :id")
+	Optional<FileAccess> findAccessById(@Param("id") Long id);
+
+	@Query("select new com.rest.s3.model.FileAccess(f.id, f.user.id, f.fileName, f.fileType, f.storageKey, f.codec, f.state) from FileData f where f.id in :ids")
+	List<FileAccess> findAccessByIdIn(@Param("ids") Collection<Long> ids);
+
+	// Deletion: a user's files oldest first, all of them or only those last updated before a cutoff
+	@Query("select new com.rest.s3.model.FileAccess(f.id, f.user.id, f.fileName, f.fileType, f.storageKey, f.codec, f.state)"
+			+ " from FileData f where f.user.id = :userId and " + LISTED + " order by f.lastUpdatedOn, f.id")
+	List<FileAccess> findAccessByUserId(@Param("userId") Long userId, Pageable limit);
+
+	@Query("select new com.rest.s3.model.FileAccess(f.id, f.user.id, f.fileName, f.fileType, f.storageKey, f.codec, f.state)"
+			+ " from FileData f where f.user.id = :userId and f.lastUpdatedOn < :before and " + LISTED + " order by f.lastUpdatedOn, f.id")
+	List<FileAccess> findAccessByUserIdBefore(@Param("userId") Long userId, @Param("before") LocalDateTime before, Pageable limit);
+
+	Optional<FileData> findFirstByStorageKey(String storageKey);
+
+	// Listing projections: constructor expressions select only the listed columns and read user_id from the FK
+	@Query(value = "select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where f.user.id = :userId and " + LISTED,
+			countQuery = "select count(f) from FileData f where f.user.id = :userId and " + LISTED)
+	Page<FileSummary> findSummariesByUserId(@Param("userId") Long userId, Pageable pageable);
+
+	@Query(value = "select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where " + LISTED,
+			countQuery = "select count(f) from FileData f where " + LISTED)
+	Page<FileSummary> findAllSummaries(Pageable pageable);
+
+	// Keyset (seek) pages ordered by (lastUpdatedOn, id) descending; served by the composite indexes on FileData
+	@Query("select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where f.user.id = :userId and " + LISTED + " order by f.lastUpdatedOn desc, f.id desc")
+	List<FileSummary> findFirstKeysetPageByUserId(@Param("userId") Long userId, Pageable limit);
+
+	@Query("select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where f.user.id = :userId and " + LISTED + " and (f.lastUpdatedOn < :lastUpdatedOn"
+			+ " or (f.lastUpdatedOn = :lastUpdatedOn and f.id < :id)) order by f.lastUpdatedOn desc, f.id desc")
+	List<FileSummary> findKeysetPageByUserId(@Param("userId") Long userId, @Param("lastUpdatedOn") LocalDateTime lastUpdatedOn,
+			@Param("id") Long id, Pageable limit);
+
+	@Query("select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where " + LISTED + " order by f.lastUpdatedOn desc, f.id desc")
+	List<FileSummary> findFirstKeysetPage(Pageable limit);
+
+	@Query("select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where " + LISTED + " and (f.lastUpdatedOn < :lastUpdatedOn"
+			+ " or (f.lastUpdatedOn = :lastUpdatedOn and f.id < :id)) order by f.lastUpdatedOn desc, f.id desc")
+	List<FileSummary> findKeysetPage(@Param("lastUpdatedOn") LocalDateTime lastUpdatedOn, @Param("id") Long id, Pageable limit);
+
+	// Filename search on lower(fileName): prefix patterns use the (user_id, lower(file_name)) pattern index and
+	// substring patterns the trigram index created by SchemaMaintenance. The pattern is already lower-cased and escaped.
+	@Query("select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where f.user.id = :userId and lower(f.fileName) like :pattern escape '\\' and " + LISTED
+			+ " order by lower(f.fileName), f.id")
+	List<FileSummary> searchByFileName(@Param("userId") Long userId, @Param("pattern") String pattern, Pageable limit);
+
+	// Reconciliation: rows stuck in a state since before a cutoff, in id order from afterId
+	@Query("select f from FileData f where f.state = :state and f.lastUpdatedOn < :before and f.id > :afterId order by f.id")
+	List<FileData> findByStateBefore(@Param("state") UploadState state, @Param("before") LocalDateTime before,
+			@Param("afterId") Long afterId, Pageable limit);
+
+	// Reconciliation: which of a page of S3 keys are referenced by a row
+	@Query("select f.storageKey from FileData f where f.storageKey in :keys")
+	List<String> findStorageKeysIn(@Param("keys") Collection<String> keys);
+
+	@Query("select new com.rest.s3.model.FileSummary(f.id, f.fileName, f.fileType, f.lastUpdatedOn, f.user.id)"
+			+ " from FileData f where f.id in :ids and f.storageKey is null")
+	List<FileSummary> findLegacySummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+	// Key migration: committed rows still stored under the legacy key, in id order from afterId
+	@Query("select f from FileData f where f.storageKey is null and (f.state is null or f.state = com.rest.s3.model.UploadState.COMMITTED)"
+			+ " and f.id > :afterId order by f.id")
+	List<FileData> findLegacyKeyedAfter(@Param("afterId") Long afterId, Pageable limit);
+
+	// Record a migrated key unless the row was deleted or re-keyed meanwhile; returns 0 in that case
+	@Transactional
+	@Modifying
+	@Query("update FileData f set f.storageKey = :storageKey where f.id = :id and f.storageKey is null")
+	int assignStorageKey(@Param("id") Long id, @Param("storageKey") String storageKey);
+
+	// Upload heartbeat: refresh the rows of uploads still running, so the reconciler does not take them for abandoned
+	@Transactional
+	@Modifying
+	@Query("update FileData f set f.lastUpdatedOn = :now where f.id in :ids and f.state = com.rest.s3.model.UploadState.PENDING")
+	int touchPending(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+	// Remove the row of an upload that did not complete; returns 0 if it is gone already or was committed meanwhile
+	@Transactional
+	@Modifying
+	@Query("delete from FileData f where f.id = :id and f.state = com.rest.s3.model.UploadState.PENDING")
+	int deletePending(@Param("id") Long id);
+
 //	Page<FileData> findByUserId(Long userId, Pageable pageable);
 
 
@@ -0,0 +1,49 @@
+package com.rest.s3.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.rest.s3.model.StoredBlob;
+
+public interface StoredBlobRepo extends JpaRepository<StoredBlob, String> {
+
+	// Add a reference to an existing blob; returns 0 if the digest is unknown
+	@Transactional
+	@Modifying
+	@Query("update StoredBlob b set b.refCount = b.refCount + 1 where b.digest = :digest")
+	int incrementRefCount(@Param("digest") String digest);
+
+	// Register a new blob with one reference; returns 0 if another upload registered the digest first
+	@Transactional
+	@Modifying
+	@Query(nativeQuery = true, value = "insert into stored_blob (digest, storage_key, size, ref_count, created_on)"
+			+ " values (:digest, :storageKey, :size, 1, :createdOn) on conflict (digest) do nothing")
+	int insertIfAbsent(@Param("digest") String digest, @Param("storageKey") String storageKey, @Param("size") long size,
+			@Param("createdOn") LocalDateTime createdOn);
+
+	// Reconciliation: which of a page of S3 keys are registered blobs
+	@Query("select b.storageKey from StoredBlob b where b.storageKey in :keys")
+	List<String> findStorageKeysIn(@Param("keys") Collection<String> keys);
+
+	// Deletion: drop count references from each of the blobs; the rows stay locked until the transaction ends
+	@Transactional
+	@Modifying
+	@Query("update StoredBlob b set b.refCount = b.refCount - :count where b.storageKey in :keys")
+	int decrementRefCounts(@Param("keys") Collection<String> keys, @Param("count") long count);
+
+	@Query("select b.storageKey from StoredBlob b where b.storageKey in :keys and b.refCount <= 0")
+	List<String> findUnreferencedStorageKeysIn(@Param("keys") Collection<String> keys);
+
+	@Transactional
+	@Modifying
+	@Query("delete from StoredBlob b where b.storageKey in :keys and b.refCount <= 0")
+	int deleteUnreferenced(@Param("keys") Collection<String> keys);
+
+}
@@ -1,6 +1,12 @@
 package com.rest.s3.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.rest.s3.model.UserData;
 
@@ -12,9 +18,23 @@ public interface UserRepo extends JpaRepository<UserData, Long> {
 
 	boolean existsByEmailIgnoreCase(String email);
 
-	UserData findByUsernameIgnoreCase(String username);
+	// lower() matches the case-insensitive unique indexes created by SchemaMaintenance
+	@Query("select u from UserData u where lower(u.username) = lower(:username)")
+	UserData findByUsernameIgnoreCase(@Param("username") String username);
+
+	@Query("select u from UserData u where lower(u.email) = lower(:email)")
+	UserData findByEmailIgnoreCase(@Param("email") String email);
+
+	// Set-based lookups for bulk imports; callers pass lower-cased values
+	@Query("select u from UserData u where lower(u.username) in :usernames")
+	List<UserData> findAllByLowerUsernameIn(@Param("usernames") Collection<String> usernames);
+
+	@Query("select u from UserData u where lower(u.email) in :emails")
+	List<UserData> findAllByLowerEmailIn(@Param("emails") Collection<String> emails);
 
-	UserData findByEmailIgnoreCase(String email);
+	// Retention: users with a policy, in id order from afterId
+	@Query("select u from UserData u where u.retentionDays > 0 and u.id > :afterId order by u.id")
+	List<UserData> findWithRetentionAfter(@Param("afterId") Long afterId, Pageable limit);
 
 
 }
@@ -0,0 +1,199 @@
+package com.rest.s3.service;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Admission limits for transfers, so one user's bulk job cannot take every request thread, S3 connection
+// and DB connection. Each user has, per direction, a token bucket (sustained rate plus burst) and a cap on
+// concurrent transfers; all uploads together are limited in the request bytes they may have in flight.
+// Requests over a limit are rejected at once with a retry hint rather than queued, so waiting never holds
+// a server thread. Disabled by default: see AdmissionFilter for how requests are attributed to users.
+@Component
+public class AdmissionControl {
+
+    public enum Transfer {
+        UPLOAD, DOWNLOAD
+    }
+
+    private final boolean enabled;
+    private final Map<Transfer, Limits> limits = new EnumMap<>(Transfer.class);
+    private final long maxInFlightBytes;
+    private final long unknownLengthBytes;
+    private final Map<String, UserState> users = new ConcurrentHashMap<>();
+    private final Map<Transfer, AtomicInteger> inFlight = new EnumMap<>(Transfer.class);
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final MeterRegistry registry;
+
+    public AdmissionControl(MeterRegistry registry,
+            @Value("${files.admission.enabled:false}") boolean enabled,
+            @Value("${files.admission.upload.rate:10}") double uploadRate,
+            @Value("${files.admission.upload.burst:20}") int uploadBurst,
+            @Value("${files.admission.upload.maxConcurrent:4}") int uploadConcurrency,
+            @Value("${files.admission.download.rate:50}") double downloadRate,
+            @Value("${files.admission.download.burst:100}") int downloadBurst,
+            @Value("${files.admission.download.maxConcurrent:16}") int downloadConcurrency,
+            @Value("${files.admission.maxInFlightBytes:2GB}") DataSize maxInFlightBytes,
+            @Value("${files.admission.unknownLengthBytes:64MB}") DataSize unknownLengthBytes) {
+        this.registry = registry;
+        this.enabled = enabled;
+        limits.put(Transfer.UPLOAD, new Limits(uploadRate, uploadBurst, uploadConcurrency));
+        limits.put(Transfer.DOWNLOAD, new Limits(downloadRate, downloadBurst, downloadConcurrency));
+        this.maxInFlightBytes = maxInFlightBytes.toBytes();
+        this.unknownLengthBytes = unknownLengthBytes.toBytes();
+        for (Transfer transfer : Transfer.values()) {
+            AtomicInteger count = new AtomicInteger();
+            inFlight.put(transfer, count);
+            Gauge.builder("files.admission.inflight", count, AtomicInteger::get).tag("transfer", tag(transfer)).register(registry);
+        }
+        Gauge.builder("files.admission.inflight.bytes", inFlightBytes, AtomicLong::get).baseUnit("bytes").register(registry);
+        Gauge.builder("files.admission.users", users, Map::size).register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Admit a transfer for user, or say when to retry. bytes is the request body size (-1 if unknown);
+    // only uploads count against the in-flight byte limit.
+    public Admission tryAdmit(Transfer transfer, String user, long bytes) {
+        Limits limit = limits.get(transfer);
+        UserState state = users.computeIfAbsent(tag(transfer) + ":" + user, key -> new UserState(limit));
+        long reserved = transfer == Transfer.UPLOAD ? (bytes < 0 ? unknownLengthBytes : bytes) : 0;
+
+        if (state.inFlight.incrementAndGet() > limit.maxConcurrent()) {
+            state.inFlight.decrementAndGet();
+            return reject(transfer, "concurrency", 1);
+        }
+        if (!reserveBytes(reserved)) {
+            state.inFlight.decrementAndGet();
+            return reject(transfer, "bytes", 1);
+        }
+        long waitNanos = state.takeToken();
+        if (waitNanos > 0) {
+            state.inFlight.decrementAndGet();
+            inFlightBytes.addAndGet(-reserved);
+            return reject(transfer, "rate", TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1);
+        }
+
+        inFlight.get(transfer).incrementAndGet();
+        registry.counter("files.admission.requests", "transfer", tag(transfer), "outcome", "admitted").increment();
+        return new Admission(new Permit(transfer, state, reserved), 0, null);
+    }
+
+    private boolean reserveBytes(long bytes) {
+        if (bytes == 0) {
+            return true;
+        }
+        long used;
+        do {
+            used = inFlightBytes.get();
+            // A single upload larger than the limit is still admitted when nothing else is in flight
+            if (used > 0 && used + bytes > maxInFlightBytes) {
+                return false;
+            }
+        } while (!inFlightBytes.compareAndSet(used, used + bytes));
+        return true;
+    }
+
+    private Admission reject(Transfer transfer, String reason, long retryAfterSeconds) {
+        registry.counter("files.admission.requests", "transfer", tag(transfer), "outcome", "rejected_" + reason).increment();
+        return new Admission(null, retryAfterSeconds, reason);
+    }
+
+    // Forget users with nothing in flight and a full bucket; they start again from the same state.
+    // A request racing with the removal may be counted against the removed entry, which only loosens
+    // that user's limits for the moment.
+    @Scheduled(fixedDelayString = "${files.admission.cleanupInterval:1m}")
+    public void removeIdleUsers() {
+        long now = System.nanoTime();
+        users.values().removeIf(state -> state.isIdle(now));
+    }
+
+    private static String tag(Transfer transfer) {
+        return transfer.name().toLowerCase(Locale.ROOT);
+    }
+
+    private record Limits(double ratePerSecond, int burst, int maxConcurrent) {
+    }
+
+    // Outcome of tryAdmit: a permit to release when the transfer ends, or why and when to retry
+    public record Admission(Permit permit, long retryAfterSeconds, String reason) {
+
+        public boolean admitted() {
+            return permit != null;
+        }
+    }
+
+    // Held for the duration of an admitted transfer; closing it more than once is harmless
+    public final class Permit implements AutoCloseable {
+
+        private final Transfer transfer;
+        private final UserState state;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Transfer transfer, UserState state, long bytes) {
+            this.transfer = transfer;
+            this.state = state;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                state.inFlight.decrementAndGet();
+                inFlight.get(transfer).decrementAndGet();
+                inFlightBytes.addAndGet(-bytes);
+            }
+        }
+    }
+
+    private static final class UserState {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        UserState(Limits limit) {
+            this.capacity = Math.max(1, limit.burst());
+            this.tokensPerNano = limit.ratePerSecond() / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = capacity;
+        }
+
+        // Take a token; 0 if one was available, otherwise the nanoseconds until one will be
+        synchronized long takeToken() {
+            refill(System.nanoTime());
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return tokensPerNano > 0 ? (long) Math.ceil((1 - tokens) / tokensPerNano) : TimeUnit.SECONDS.toNanos(60);
+        }
+
+        synchronized boolean isIdle(long now) {
+            refill(now);
+            return inFlight.get() == 0 && tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.model.FileAccess;
+
+import jakarta.annotation.PreDestroy;
+
+// Bulk download: a set of files streamed as one ZIP. The files are authorized with a single query up front,
+// then fetched a bounded number ahead of the entry being written, so S3 round trips overlap instead of adding up.
+// Up to readAheadSize of each file is read ahead into memory and its connection released; the rest of a larger
+// file is only requested when its turn comes. Read-ahead memory is bounded across all archives by
+// maxReadAheadMemory; past it, files are not read ahead at all.
+@Service
+public class ArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveService.class);
+
+    private final FileService fileService;
+    private final int maxFiles;
+    private final int prefetch;
+    private final int readAheadBytes;
+    // Bytes of read-ahead memory still free, shared by all archives
+    private final Semaphore readAheadMemory;
+    private final ExecutorService fetchExecutor;
+
+    public ArchiveService(FileService fileService,
+            @Value("${files.archive.maxFiles:1000}") int maxFiles,
+            @Value("${files.archive.prefetch:8}") int prefetch,
+            @Value("${files.archive.readAheadSize:4MB}") DataSize readAheadSize,
+            @Value("${files.archive.maxReadAheadMemory:64MB}") DataSize maxReadAheadMemory,
+            @Value("${files.archive.threads:32}") int threads) {
+        this.fileService = fileService;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.prefetch = Math.max(1, prefetch);
+        this.readAheadBytes = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, readAheadSize.toBytes()));
+        this.readAheadMemory = new Semaphore((int) Math.min(Integer.MAX_VALUE, Math.max(0, maxReadAheadMemory.toBytes())));
+        // Shared by all archive requests; each keeps at most prefetch fetches queued or running
+        this.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, threads), new CustomizableThreadFactory("archive-fetch-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdown();
+    }
+
+    // Validate the request before any of the response is sent, including that every file can be read here
+    public List<FileAccess> authorize(Long userId, List<Long> attachmentIds) {
+        if (attachmentIds == null || attachmentIds.isEmpty()) {
+            throw new IllegalArgumentException("At least one attachmentId is required.");
+        }
+        if (attachmentIds.size() > maxFiles) {
+            throw new IllegalArgumentException("An archive can hold at most " + maxFiles + " files.");
+        }
+        return fileService.authorizeAll(userId, attachmentIds).stream().map(fileService::readableAccess).toList();
+    }
+
+    // Write the files, in order, as a ZIP to out. A failure part way through leaves the archive without its
+    // central directory, so the client sees a broken download rather than a silently incomplete one.
+    public void writeArchive(List<FileAccess> files, OutputStream out) throws IOException {
+        Deque<CompletableFuture<Entry>> window = new ArrayDeque<>();
+        int next = 0;
+        Set<String> names = new HashSet<>();
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try {
+            while (next < files.size() && window.size() < prefetch) {
+                window.add(fetch(files.get(next++)));
+            }
+            while (!window.isEmpty()) {
+                Entry entry = await(window.poll());
+                // Keep the window full while this entry is written
+                if (next < files.size()) {
+                    window.add(fetch(files.get(next++)));
+                }
+                try {
+                    write(zip, entry, names);
+                } finally {
+                    release(entry);
+                }
+            }
+            zip.finish();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Archive of {} files failed: {}", files.size(), e.getMessage());
+            // Free the read-ahead of entries never written, including those still being fetched
+            window.forEach(pending -> pending.thenAccept(this::release));
+            throw e;
+        }
+    }
+
+    private void write(ZipOutputStream zip, Entry entry, Set<String> names) throws IOException {
+        FileAccess access = entry.access();
+        FileDownload rest = entry.complete() ? null : openRest(entry);
+        try {
+            ZipEntry zipEntry = new ZipEntry(entryName(access, names));
+            Instant lastModified = entry.lastModified() != null || rest == null ? entry.lastModified() : rest.getLastModified();
+            if (lastModified != null) {
+                zipEntry.setLastModifiedTime(FileTime.from(lastModified));
+            }
+            // Files the codec found compressible are deflated; images and documents are already compressed,
+            // so they are only stored, which costs next to no CPU
+            zip.setLevel(access.codec() != null ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION);
+            zip.putNextEntry(zipEntry);
+            zip.write(entry.head());
+            if (rest != null && rest.getBody() != null) {
+                rest.getBody().transferTo(zip);
+            }
+            zip.closeEntry();
+        } catch (IOException | RuntimeException e) {
+            if (rest != null) {
+                rest.discard();
+            }
+            throw e;
+        }
+        if (rest != null && rest.getBody() != null) {
+            rest.getBody().close();
+        }
+    }
+
+    // What follows the read-ahead of a larger file: the rest of the object by range, or all of it when nothing
+    // is held (not read ahead, or encoded, whose read-ahead is dropped since S3 cannot serve ranges of the decoded
+    // bytes). An empty rest, where the object ends with the read-ahead, comes back as a 416 without a body.
+    private FileDownload openRest(Entry entry) throws IOException {
+        FileAccess access = entry.access();
+        if (entry.head().length == 0) {
+            return fileService.download(access, access.fileName(), DownloadOptions.NONE);
+        }
+        return fileService.download(access, access.fileName(),
+                new DownloadOptions("bytes=" + entry.head().length + "-", null, null, false));
+    }
+
+    private CompletableFuture<Entry> fetch(FileAccess access) {
+        // Reserve for the most that can be read ahead; without that much memory to spare, the file is
+        // left to be opened when its turn comes
+        int reserved = readAheadBytes + 1;
+        if (!readAheadMemory.tryAcquire(reserved)) {
+            return CompletableFuture.completedFuture(new Entry(access, null, new byte[0], false, 0));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readAhead(access, reserved);
+                } catch (IOException e) {
+                    readAheadMemory.release(reserved);
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    readAheadMemory.release(reserved);
+                    throw e;
+                }
+            }, fetchExecutor);
+        } catch (RuntimeException e) {
+            readAheadMemory.release(reserved);
+            throw e;
+        }
+    }
+
+    // Read up to readAheadSize of the file and release its connection; more than that marks a larger file
+    private Entry readAhead(FileAccess access, int reserved) throws IOException {
+        FileDownload download = fileService.download(access, access.fileName(), DownloadOptions.NONE);
+        byte[] head;
+        try {
+            head = download.getBody().readNBytes(readAheadBytes + 1);
+        } catch (IOException | RuntimeException e) {
+            download.discard();
+            throw e;
+        }
+        boolean complete = head.length <= readAheadBytes;
+        if (complete) {
+            download.getBody().close();
+        } else {
+            // Aborted rather than drained; the rest is requested when the entry is written
+            download.discard();
+            if (access.codec() != null) {
+                head = new byte[0];
+            }
+        }
+        readAheadMemory.release(reserved - head.length);
+        return new Entry(access, download.getLastModified(), head, complete, head.length);
+    }
+
+    private void release(Entry entry) {
+        readAheadMemory.release(entry.reservedBytes());
+    }
+
+    private static Entry await(CompletableFuture<Entry> pending) throws IOException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    // Stored names are client-supplied: keep only the last path segment and make duplicates unique
+    static String entryName(FileAccess access, Set<String> names) {
+        String name = access.fileName() == null ? "" : access.fileName();
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        if (name.isBlank() || name.equals(".") || name.equals("..")) {
+            name = "file-" + access.attachmentId();
+        }
+        String unique = name;
+        int extension = name.lastIndexOf('.');
+        String base = extension > 0 ? name.substring(0, extension) : name;
+        String suffix = extension > 0 ? name.substring(extension) : "";
+        for (int i = 2; !names.add(unique); i++) {
+            unique = base + " (" + i + ")" + suffix;
+        }
+        return unique;
+    }
+
+    // A file as read ahead: its first bytes (all of them if complete) and the read-ahead memory they hold
+    private record Entry(FileAccess access, Instant lastModified, byte[] head, boolean complete, int reservedBytes) {
+    }
+}
@@ -0,0 +1,252 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.rest.s3.model.FileAccess;
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.UserData;
+
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Non-blocking variant of FileService: S3 round trips run on the S3AsyncClient event loop
+// and complete a CompletableFuture instead of holding the request thread.
+@Service
+@ConditionalOnProperty(name = "aws.s3.async.enabled", havingValue = "true")
+public class AsyncFileService {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncFileService.class);
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucketName;
+    private final FileService fileService;
+    private final ContentCodec contentCodec;
+    // Same split as S3MultipartUploader: single put below the threshold, parts of partSize above it
+    private final long multipartThreshold;
+    private final int partSize;
+    private final int partConcurrency;
+
+    // Feeds upload bodies from the spooled multipart file into the async client
+    private final ExecutorService uploadStreamExecutor;
+
+    public AsyncFileService(S3AsyncClient s3AsyncClient, String bucketName, FileService fileService, ContentCodec contentCodec,
+            @Value("${aws.s3.multipart.threshold:16MB}") DataSize multipartThreshold,
+            @Value("${aws.s3.multipart.partSize:8MB}") DataSize partSize,
+            @Value("${aws.s3.multipart.concurrency:4}") int partConcurrency,
+            @Value("${aws.s3.async.uploadThreads:8}") int uploadThreads) {
+        this.s3AsyncClient = s3AsyncClient;
+        this.bucketName = bucketName;
+        this.fileService = fileService;
+        this.contentCodec = contentCodec;
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.partConcurrency = Math.max(1, partConcurrency);
+        this.uploadStreamExecutor = Executors.newFixedThreadPool(Math.max(1, uploadThreads),
+                new CustomizableThreadFactory("s3-async-upload-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadStreamExecutor.shutdown();
+    }
+
+    // Upload file and save metadata, completing once S3 has stored the object. Request bodies are byte arrays,
+    // so the client's retry policy can replay them.
+    public CompletableFuture<String> uploadFile(MultipartFile file, Long userId) throws IOException {
+        UserData user = fileService.validateUpload(file, userId);
+
+        String fileName = file.getOriginalFilename();
+        String contentType = file.getContentType();
+        FileData fileData = fileService.saveFileMetadata(user, fileName, contentType);
+
+        CompletableFuture<Void> stored;
+        try {
+            String key = fileService.assignObjectKey(fileData);
+            stored = file.getSize() < multipartThreshold
+                    ? putObject(key, contentType, file)
+                    : uploadMultipart(key, contentType, file);
+        } catch (IOException | RuntimeException e) {
+            fileService.discardUpload(fileData);
+            throw e;
+        }
+        return stored
+                // Off the event loop: the row is committed or removed with a blocking repository call
+                .handleAsync((response, e) -> {
+                    if (e != null) {
+                        fileService.discardUpload(fileData);
+                        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                        if (cause instanceof S3Exception s3Exception) {
+                            throw new IllegalArgumentException("Error occurred during file upload: "
+                                    + s3Exception.awsErrorDetails().errorMessage());
+                        }
+                        throw new CompletionException(cause);
+                    }
+                    fileService.commitUpload(fileData);
+                    return "File uploaded successfully: " + fileName;
+                }, uploadStreamExecutor);
+    }
+
+    private CompletableFuture<Void> putObject(String key, String contentType, MultipartFile file) throws IOException {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+        return s3AsyncClient.putObject(putObjectRequest, AsyncRequestBody.fromBytes(file.getBytes()))
+                .thenApply(response -> null);
+    }
+
+    // Large files go through a multipart upload. An upload thread reads the parts from the spooled file, with at most
+    // partConcurrency of them buffered and in flight; on failure the upload is aborted once the sent parts have settled.
+    private CompletableFuture<Void> uploadMultipart(String key, String contentType, MultipartFile file) {
+        return s3AsyncClient.createMultipartUpload(b -> b.bucket(bucketName).key(key).contentType(contentType))
+                .thenComposeAsync(created -> {
+                    String uploadId = created.uploadId();
+                    List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+                    CompletableFuture<Void> sent;
+                    try {
+                        sendParts(key, uploadId, file, parts);
+                        sent = CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new));
+                    } catch (IOException | RuntimeException e) {
+                        sent = CompletableFuture.failedFuture(e);
+                    }
+                    return sent
+                            .thenCompose(v -> s3AsyncClient.completeMultipartUpload(b -> b.bucket(bucketName)
+                                    .key(key)
+                                    .uploadId(uploadId)
+                                    .multipartUpload(m -> m.parts(parts.stream().map(CompletableFuture::join).toList()))))
+                            .<Void>thenApply(response -> null)
+                            .exceptionallyCompose(e -> abort(key, uploadId, parts)
+                                    .thenCompose(aborted -> CompletableFuture.failedFuture(
+                                            e instanceof CompletionException ? e.getCause() : e)));
+                }, uploadStreamExecutor);
+    }
+
+    // Read and send the parts in order; stops early once a part has failed
+    private void sendParts(String key, String uploadId, MultipartFile file, List<CompletableFuture<CompletedPart>> parts)
+            throws IOException {
+        Semaphore inFlight = new Semaphore(partConcurrency);
+        AtomicBoolean failed = new AtomicBoolean();
+        try (InputStream in = file.getInputStream()) {
+            for (int number = 1; ; number++) {
+                inFlight.acquireUninterruptibly();
+                byte[] data = failed.get() ? new byte[0] : in.readNBytes(partSize);
+                if (data.length == 0) {
+                    inFlight.release();
+                    return;
+                }
+                int partNumber = number;
+                parts.add(s3AsyncClient.uploadPart(b -> b.bucket(bucketName)
+                                        .key(key)
+                                        .uploadId(uploadId)
+                                        .partNumber(partNumber)
+                                        .contentLength((long) data.length),
+                                AsyncRequestBody.fromBytes(data))
+                        .thenApply(response -> CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build())
+                        .whenComplete((part, e) -> {
+                            if (e != null) {
+                                failed.set(true);
+                            }
+                            inFlight.release();
+                        }));
+            }
+        }
+    }
+
+    // Abort after every sent part has completed or failed, so no part is stored after the abort
+    private CompletableFuture<Void> abort(String key, String uploadId, List<CompletableFuture<CompletedPart>> parts) {
+        return CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new))
+                .handle((result, e) -> null)
+                .thenCompose(settled -> s3AsyncClient.abortMultipartUpload(b -> b.bucket(bucketName).key(key).uploadId(uploadId)))
+                .handle((response, e) -> {
+                    if (e != null) {
+                        log.warn("Failed to abort multipart upload {} for {}: {}", uploadId, key, e.getMessage());
+                    }
+                    return null;
+                });
+    }
+
+    // Download file if authorized; completes as soon as S3 returns the response headers, with the body
+    // still to be published by the async client as it arrives
+    public CompletableFuture<AsyncDownload> downloadFile(String filename, Long userId, Long attachmentId, DownloadOptions options) {
+        FileAccess authorized = fileService.authorize(filename, userId, attachmentId);
+        try {
+            FileDownload spooled = fileService.spooledDownload(authorized, options);
+            if (spooled != null) {
+                return CompletableFuture.completedFuture(new AsyncDownload(spooled,
+                        spooled.getBody() != null ? new InputStreamPublisher(spooled.getBody()) : null));
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        FileAccess access = fileService.flushedAccess(authorized);
+        String newFileName = fileService.storageKey(access, filename);
+
+        GetObjectRequest getObjectRequest = fileService.getObjectRequest(newFileName,
+                access.codec() != null ? contentCodec.encodedOptions(options) : options);
+
+        return s3AsyncClient.getObject(getObjectRequest, AsyncResponseTransformer.<GetObjectResponse>toPublisher())
+                .thenApply(published -> {
+                    // The headers are presented as for a streamed body; the bytes themselves come from the publisher
+                    FileDownload download = contentCodec.present(FileDownload.of(published.response(), InputStream.nullInputStream()),
+                            access.codec(), options);
+                    boolean decode = access.codec() != null && download.getContentEncoding() == null;
+                    return new AsyncDownload(download, decode ? gunzipped(published) : published);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof S3Exception s3Exception) {
+                        FileDownload withoutBody = FileDownload.fromConditionalFailure(s3Exception);
+                        if (withoutBody != null) {
+                            return new AsyncDownload(withoutBody, null);
+                        }
+                        throw new CompletionException(new IOException("Error occurred while fetching file from S3: "
+                                + s3Exception.awsErrorDetails().errorMessage()));
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    // Decode a gzip-stored body buffer by buffer as the client reads it
+    private static Publisher<ByteBuffer> gunzipped(SdkPublisher<ByteBuffer> body) {
+        GzipBufferDecoder decoder = new GzipBufferDecoder();
+        return body.flatMapIterable(decoder::decode)
+                .doAfterOnComplete(decoder::end)
+                .doAfterOnError(e -> decoder.end())
+                .doAfterOnCancel(decoder::end);
+    }
+
+    // Status and headers of a download, and its body as buffers (null if there is none). The body stream of
+    // the download is only a placeholder for object downloads; the publisher must be subscribed or cancelled.
+    public record AsyncDownload(FileDownload download, Publisher<ByteBuffer> body) {
+    }
+}
@@ -0,0 +1,125 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.UploadResult;
+import com.rest.s3.model.UserData;
+import com.rest.s3.repository.FileRepo;
+
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Uploads many files in one request: one batched insert for all metadata rows, then concurrent S3 puts
+@Service
+public class BatchUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchUploadService.class);
+
+    private final FileService fileService;
+    private final FileRepo fileRepo;
+    private final int maxFiles;
+    private final ExecutorService uploadExecutor;
+
+    public BatchUploadService(FileService fileService, FileRepo fileRepo,
+            @Value("${files.batch.maxFiles:1000}") int maxFiles,
+            @Value("${files.batch.concurrency:16}") int concurrency) {
+        this.fileService = fileService;
+        this.fileRepo = fileRepo;
+        this.maxFiles = maxFiles;
+        this.uploadExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency), new CustomizableThreadFactory("s3-batch-upload-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdown();
+    }
+
+    public List<UploadResult> uploadFiles(List<MultipartFile> files, Long userId) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("No files to upload.");
+        }
+        if (files.size() > maxFiles) {
+            throw new IllegalArgumentException("A batch can contain at most " + maxFiles + " files.");
+        }
+        UserData user = fileService.findUploader(userId);
+
+        // Validate everything up front so rejected files never get a row
+        UploadResult[] results = new UploadResult[files.size()];
+        List<Integer> accepted = new ArrayList<>();
+        List<FileData> rows = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            try {
+                fileService.validateFile(file);
+                accepted.add(i);
+                rows.add(fileService.newFileData(user, file.getOriginalFilename(), file.getContentType()));
+            } catch (IllegalArgumentException e) {
+                results[i] = UploadResult.rejected(file.getOriginalFilename(), e.getMessage());
+            }
+        }
+
+        // Sequence ids are reserved in blocks, so saveAll becomes JDBC-batched inserts
+        fileRepo.saveAll(rows);
+        rows.forEach(fileService::uploadStarted);
+
+        List<FileData> failed = new ArrayList<>();
+        try {
+            List<CompletableFuture<Void>> uploads = new ArrayList<>(rows.size());
+            for (int j = 0; j < rows.size(); j++) {
+                int index = accepted.get(j);
+                MultipartFile file = files.get(index);
+                FileData fileData = rows.get(j);
+                uploads.add(CompletableFuture.runAsync(() -> results[index] = upload(file, fileData), uploadExecutor));
+            }
+            CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0])).join();
+
+            // Stored rows are committed in one batched update; rows whose object never reached S3 are removed
+            List<FileData> stored = new ArrayList<>();
+            for (int j = 0; j < rows.size(); j++) {
+                if (results[accepted.get(j)].status() == UploadResult.Status.FAILED) {
+                    failed.add(rows.get(j));
+                } else {
+                    stored.add(rows.get(j));
+                }
+            }
+            if (!stored.isEmpty()) {
+                fileService.commitUploads(stored);
+            }
+        } finally {
+            // Failed rows go even if the commit failed. No row stays tracked: one left PENDING by a failure here
+            // is committed or removed by the reconciler.
+            if (!failed.isEmpty()) {
+                fileService.discardUploads(failed);
+            }
+            rows.forEach(fileData -> fileService.uploadEnded(fileData.getId()));
+        }
+
+        return List.of(results);
+    }
+
+    private UploadResult upload(MultipartFile file, FileData fileData) {
+        String fileName = fileData.getFileName();
+        try {
+            fileService.storeObject(file, fileData);
+            return UploadResult.uploaded(fileName, fileData.getId());
+        } catch (S3Exception e) {
+            return UploadResult.failed(fileName, "Error occurred during file upload: " + e.awsErrorDetails().errorMessage());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Batch upload of {} failed", fileName, e);
+            return UploadResult.failed(fileName, "An unexpected error occurred.");
+        }
+    }
+}
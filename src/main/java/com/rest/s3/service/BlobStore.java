@@ -0,0 +1,130 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.rest.s3.model.StoredBlob;
+import com.rest.s3.repository.StoredBlobRepo;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Content-addressed storage: each distinct SHA-256 is stored once under blobs/ and reference-counted,
+// so uploading bytes that already exist skips the S3 put entirely.
+// Every upload writes to a key of its own rather than one derived from the digest: when the last reference
+// to a blob is deleted, its row goes first and the object afterwards, so content stored again in between
+// must not land on the key that is about to be deleted.
+@Service
+public class BlobStore {
+
+    static final String BLOB_PREFIX = "blobs/";
+
+    private final StoredBlobRepo blobRepo;
+    private final S3MultipartUploader s3Uploader;
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final boolean enabled;
+
+    public BlobStore(StoredBlobRepo blobRepo, S3MultipartUploader s3Uploader, S3Client s3Client, String bucketName,
+            @Value("${files.dedup.enabled:false}") boolean enabled) {
+        this.blobRepo = blobRepo;
+        this.s3Uploader = s3Uploader;
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Store a spooled upload: hash it first, then upload only if the digest is new
+    public StoredContent store(MultipartFile file) throws IOException {
+        MessageDigest sha256 = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), sha256)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String digest = HexFormat.of().formatHex(sha256.digest());
+
+        String existingKey = acquire(digest);
+        if (existingKey != null) {
+            return new StoredContent(existingKey, digest, false);
+        }
+
+        String key = newBlobKey();
+        try (InputStream in = file.getInputStream()) {
+            s3Uploader.upload(key, file.getContentType(), in, file.getSize());
+        }
+        // A concurrent upload of the same new content may register it first, in which case this copy goes
+        return adopt(key, digest, file.getSize());
+    }
+
+    // Adopt an object that was uploaded under a new blob key (see newBlobKey) before its digest was registered.
+    // If the content already exists the new copy is deleted and the existing blob is referenced; a copy that cannot
+    // be deleted is left to the reconciler rather than failing with the reference already taken.
+    public StoredContent adopt(String uploadedKey, String digest, long size) {
+        while (true) {
+            String existingKey = acquire(digest);
+            if (existingKey != null) {
+                try {
+                    s3Client.deleteObject(b -> b.bucket(bucketName).key(uploadedKey));
+                } catch (S3Exception e) {
+                    // Unreferenced, so the reconciler's object sweep removes it
+                }
+                return new StoredContent(existingKey, digest, false);
+            }
+            if (blobRepo.insertIfAbsent(digest, uploadedKey, size, LocalDateTime.now()) == 1) {
+                return new StoredContent(uploadedKey, digest, true);
+            }
+            // Registered by another upload since acquire looked, or already released again; look once more
+        }
+    }
+
+    // Drop a reference taken by store or adopt for a row that was discarded. The last reference removes the blob,
+    // its row first and then the object, as a deletion does; a failed object delete is left to the reconciler.
+    public void release(String storageKey) {
+        List<String> keys = List.of(storageKey);
+        blobRepo.decrementRefCounts(keys, 1);
+        if (blobRepo.deleteUnreferenced(keys) > 0) {
+            s3Client.deleteObject(b -> b.bucket(bucketName).key(storageKey));
+        }
+    }
+
+    // A key no other blob has used, so no pending deletion can remove it
+    static String newBlobKey() {
+        return BLOB_PREFIX + UUID.randomUUID();
+    }
+
+    // Take a reference on an existing blob and return its key, or null if the digest is unknown
+    private String acquire(String digest) {
+        if (blobRepo.incrementRefCount(digest) == 0) {
+            return null;
+        }
+        Optional<StoredBlob> blob = blobRepo.findById(digest);
+        return blob.map(StoredBlob::getStorageKey).orElse(null);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record StoredContent(String storageKey, String digest, boolean uploaded) {
+    }
+}
@@ -0,0 +1,86 @@
+package com.rest.s3.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.rest.s3.cache.FileAccessCache;
+import com.rest.s3.cache.ObjectCache;
+import com.rest.s3.model.CacheInvalidation;
+import com.rest.s3.repository.CacheInvalidationRepo;
+
+// Drops deleted files from the caches of every node. This node's caches are cleared right away; the change is also
+// recorded in cacheInvalidation, which every node reads every pollInterval, so other nodes stop authorizing and
+// serving a deleted file within about one poll interval rather than after the cache TTLs.
+// Each poll reads the records of the last lookback again, which covers inserts that commit late and clocks that
+// differ between nodes; clearing an entry twice is harmless.
+@Component
+public class CacheInvalidator {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidator.class);
+
+    private final CacheInvalidationRepo invalidationRepo;
+    private final FileAccessCache fileAccessCache;
+    private final ObjectCache objectCache;
+    private final Duration lookback;
+    private final Duration retention;
+    private LocalDateTime lastPoll = LocalDateTime.now();
+    private LocalDateTime nextPrune = LocalDateTime.now();
+
+    public CacheInvalidator(CacheInvalidationRepo invalidationRepo, FileAccessCache fileAccessCache, ObjectCache objectCache,
+            @Value("${files.cacheInvalidation.lookback:30s}") Duration lookback,
+            @Value("${files.cacheInvalidation.retention:1h}") Duration retention) {
+        this.invalidationRepo = invalidationRepo;
+        this.fileAccessCache = fileAccessCache;
+        this.objectCache = objectCache;
+        this.lookback = lookback;
+        this.retention = retention;
+    }
+
+    // Clear the files and objects here and record them for the other nodes
+    public void invalidate(Collection<Long> fileIds, Collection<String> storageKeys) {
+        fileIds.forEach(fileAccessCache::invalidate);
+        storageKeys.forEach(objectCache::invalidate);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<CacheInvalidation> records = new ArrayList<>(fileIds.size() + storageKeys.size());
+        fileIds.forEach(id -> records.add(new CacheInvalidation(null, id, null, now)));
+        storageKeys.forEach(key -> records.add(new CacheInvalidation(null, null, key, now)));
+        try {
+            invalidationRepo.saveAll(records);
+        } catch (RuntimeException e) {
+            // The change itself is done; other nodes drop the entries when their TTLs expire
+            log.warn("Could not record {} cache invalidations: {}", records.size(), e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${files.cacheInvalidation.pollInterval:2s}")
+    public void poll() {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            for (CacheInvalidation record : invalidationRepo.findByCreatedOnAfter(lastPoll.minus(lookback))) {
+                if (record.getFileId() != null) {
+                    fileAccessCache.invalidate(record.getFileId());
+                }
+                if (record.getStorageKey() != null) {
+                    objectCache.invalidate(record.getStorageKey());
+                }
+            }
+            lastPoll = now;
+            if (now.isAfter(nextPrune)) {
+                invalidationRepo.deleteCreatedBefore(now.minus(retention));
+                nextPrune = now.plus(lookback);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not read cache invalidations: {}", e.getMessage());
+        }
+    }
+}
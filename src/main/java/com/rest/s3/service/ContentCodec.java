@@ -0,0 +1,130 @@
+package com.rest.s3.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+// Optional storage encoding: compressible uploads are gzipped on their way to S3 and the codec is recorded on
+// FileData. Downloads pass the gzip bytes through to clients that accept them and decode on the fly otherwise.
+@Component
+public class ContentCodec {
+
+    public static final String GZIP = "gzip";
+
+    private final boolean enabled;
+    private final int probeSize;
+    private final long minSize;
+    private final double maxRatio;
+    private final int level;
+
+    public ContentCodec(@Value("${files.compression.enabled:false}") boolean enabled,
+            @Value("${files.compression.probeSize:64KB}") DataSize probeSize,
+            @Value("${files.compression.minSize:4KB}") DataSize minSize,
+            @Value("${files.compression.maxRatio:0.9}") double maxRatio,
+            @Value("${files.compression.level:6}") int level) {
+        this.enabled = enabled;
+        this.probeSize = Math.toIntExact(Math.max(1, probeSize.toBytes()));
+        this.minSize = minSize.toBytes();
+        this.maxRatio = maxRatio;
+        this.level = level;
+    }
+
+    // Decide how to store a stream. The first probeSize bytes are compressed once to estimate the ratio;
+    // the returned stream replays them followed by the rest of the input, encoded or not.
+    public Encoded encode(InputStream in, String contentType, long size) throws IOException {
+        if (!enabled || isPrecompressed(contentType) || (size >= 0 && size < minSize)) {
+            return new Encoded(in, null, size);
+        }
+        byte[] probe = in.readNBytes(probeSize);
+        boolean complete = probe.length < probeSize;
+        long knownSize = complete ? probe.length : size;
+        InputStream replay = new SequenceInputStream(new ByteArrayInputStream(probe), in);
+        if (probe.length < minSize || compressedSize(probe) > probe.length * maxRatio) {
+            return new Encoded(replay, null, knownSize);
+        }
+        return new Encoded(new GzipEncodingInputStream(replay, level), GZIP, -1);
+    }
+
+    // JPEG and PNG are already entropy coded; gzip only costs CPU on them
+    private static boolean isPrecompressed(String contentType) {
+        return contentType != null && (contentType.equals("image/jpeg") || contentType.equals("image/png"));
+    }
+
+    private int compressedSize(byte[] probe) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(probe);
+            deflater.finish();
+            byte[] out = new byte[8192];
+            int total = 0;
+            while (!deflater.finished()) {
+                total += deflater.deflate(out);
+            }
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Ranges address the decoded bytes, which S3 cannot serve from an encoded object, so encoded objects
+    // are always read whole. Weak validators handed out for decoded responses are matched against the stored ETag.
+    public DownloadOptions encodedOptions(DownloadOptions options) {
+        String ifNoneMatch = options.ifNoneMatch() != null ? options.ifNoneMatch().replace("W/", "") : null;
+        return new DownloadOptions(null, ifNoneMatch, options.ifModifiedSince(), options.acceptsGzip());
+    }
+
+    // Present an encoded object: pass it through to gzip-capable clients, otherwise decode it while streaming
+    public FileDownload present(FileDownload download, String codec, DownloadOptions options) {
+        if (codec == null) {
+            return download;
+        }
+        if (!GZIP.equals(codec)) {
+            throw new IllegalStateException("Unknown storage codec: " + codec);
+        }
+        return options.acceptsGzip() ? download.withContentEncoding(GZIP) : download.gunzipped();
+    }
+
+    // True if an Accept-Encoding header allows gzip; an explicit gzip entry wins over "*", and q=0 refuses
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                return quality(parts) > 0;
+            }
+            if (coding.equals("*")) {
+                wildcard = quality(parts) > 0;
+            }
+        }
+        return wildcard;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    // Stream to upload, the codec it is encoded with (null for none) and its size if known (-1 otherwise)
+    public record Encoded(InputStream stream, String codec, long size) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.rest.s3.service;
+
+import java.time.Instant;
+
+// HTTP range and conditional headers forwarded from the download request to S3, plus whether the
+// client accepts gzip so objects stored with that codec can be sent without decoding
+public record DownloadOptions(String range, String ifNoneMatch, Instant ifModifiedSince, boolean acceptsGzip) {
+
+    public static final DownloadOptions NONE = new DownloadOptions(null, null, null, false);
+
+    public DownloadOptions {
+        // Only a single byte range is forwarded; multi-range requests are served in full
+        if (range != null && (!range.startsWith("bytes=") || range.indexOf(',') >= 0)) {
+            range = null;
+        }
+    }
+
+    public boolean isPartial() {
+        return range != null;
+    }
+}
@@ -0,0 +1,195 @@
+package com.rest.s3.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rest.s3.cache.ObjectCache;
+import com.rest.s3.model.FileAccess;
+import com.rest.s3.model.UploadState;
+import com.rest.s3.repository.FileRepo;
+import com.rest.s3.repository.StoredBlobRepo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Deletes files a batch at a time: the rows of a batch (and their blob references) go in one transaction,
+// then all their objects, thumbnails included, in DeleteObjects calls of up to 1000 keys.
+// Rows are removed first, so a failure can only leave unreferenced objects behind, which the reconciler
+// removes, never a row pointing at a missing object. Every node drops the deleted files from its caches
+// within the CacheInvalidator poll interval.
+@Service
+public class FileDeletionService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileDeletionService.class);
+
+    // DeleteObjects limit
+    static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final FileRepo fileRepo;
+    private final StoredBlobRepo blobRepo;
+    private final FileService fileService;
+    private final ThumbnailService thumbnailService;
+    private final ObjectCache objectCache;
+    private final CacheInvalidator cacheInvalidator;
+    private final UploadSpool uploadSpool;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry registry;
+    private final int batchSize;
+
+    public FileDeletionService(S3Client s3Client, String bucketName, FileRepo fileRepo, StoredBlobRepo blobRepo,
+            FileService fileService, ThumbnailService thumbnailService, ObjectCache objectCache, CacheInvalidator cacheInvalidator,
+            UploadSpool uploadSpool, TransactionTemplate transactionTemplate, MeterRegistry registry,
+            @Value("${files.delete.batchSize:1000}") int batchSize) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.fileRepo = fileRepo;
+        this.blobRepo = blobRepo;
+        this.fileService = fileService;
+        this.thumbnailService = thumbnailService;
+        this.objectCache = objectCache;
+        this.cacheInvalidator = cacheInvalidator;
+        this.uploadSpool = uploadSpool;
+        this.transactionTemplate = transactionTemplate;
+        this.registry = registry;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public String deleteFile(Long userId, Long attachmentId) {
+        List<FileAccess> files = fileService.authorizeAll(userId, List.of(attachmentId));
+        delete(files, "request");
+        return "File deleted successfully: " + files.get(0).fileName();
+    }
+
+    // All or nothing: every attachment is authorized before any is deleted
+    public int deleteFiles(Long userId, List<Long> attachmentIds) {
+        if (attachmentIds == null || attachmentIds.isEmpty()) {
+            throw new IllegalArgumentException("At least one attachmentId is required.");
+        }
+        if (attachmentIds.size() > batchSize) {
+            throw new IllegalArgumentException("At most " + batchSize + " files can be deleted at once.");
+        }
+        List<FileAccess> files = fileService.authorizeAll(userId, attachmentIds);
+        delete(files, "request");
+        return files.size();
+    }
+
+    // Every file of a user, a batch at a time; each batch is complete once deleted, so an interrupted
+    // purge is simply repeated
+    public int deleteAllFiles(Long userId) {
+        fileService.findUploader(userId);
+        int deleted = 0;
+        List<FileAccess> batch;
+        do {
+            batch = fileRepo.findAccessByUserId(userId, PageRequest.of(0, batchSize));
+            delete(batch, "request");
+            deleted += batch.size();
+        } while (batch.size() == batchSize);
+        return deleted;
+    }
+
+    // Delete one batch of authorized files
+    void delete(List<FileAccess> files, String reason) {
+        if (files.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(files.size());
+        Map<String, Integer> references = new HashMap<>();
+        for (FileAccess access : files) {
+            ids.add(access.attachmentId());
+            references.merge(fileService.storageKey(access, access.fileName()), 1, Integer::sum);
+        }
+
+        // Blobs shared with files that remain are only dereferenced; the rest are deleted with the files
+        Set<String> retainedBlobs = transactionTemplate.execute(status -> {
+            fileRepo.deleteAllByIdInBatch(ids);
+            return releaseBlobs(references);
+        });
+
+        Set<String> keys = new LinkedHashSet<>();
+        for (FileAccess access : files) {
+            String key = fileService.storageKey(access, access.fileName());
+            if (retainedBlobs.contains(key)) {
+                continue;
+            }
+            keys.add(key);
+            if (thumbnailService.hasVariants(access.fileName(), access.fileType())) {
+                keys.addAll(thumbnailService.derivedKeys(key));
+            }
+        }
+        deleteObjects(new ArrayList<>(keys));
+        cacheInvalidator.invalidate(ids, keys);
+
+        for (FileAccess access : files) {
+            if (access.state() == UploadState.SPOOLED) {
+                uploadSpool.delete(access.attachmentId());
+            }
+        }
+        registry.counter("files.deletions", "reason", reason).increment(files.size());
+    }
+
+    // Drop the references the deleted rows held and return the blobs other rows still refer to.
+    // The decremented blob rows stay locked until commit, so a concurrent upload either takes its reference
+    // before the release (and keeps the blob) or finds the blob gone and stores the content again, under a new
+    // key that the object deletion following this transaction does not touch.
+    // Blobs are looked up by key rather than prefix, since streamed uploads are adopted under their own key.
+    private Set<String> releaseBlobs(Map<String, Integer> references) {
+        List<String> blobKeys = blobRepo.findStorageKeysIn(references.keySet());
+        if (blobKeys.isEmpty()) {
+            return Set.of();
+        }
+        // One update per distinct reference count, which is a single update unless files shared a blob
+        Map<Integer, List<String>> byCount = new HashMap<>();
+        for (String key : blobKeys) {
+            byCount.computeIfAbsent(references.get(key), count -> new ArrayList<>()).add(key);
+        }
+        byCount.forEach((count, keys) -> blobRepo.decrementRefCounts(keys, count));
+
+        List<String> released = blobRepo.findUnreferencedStorageKeysIn(blobKeys);
+        if (!released.isEmpty()) {
+            blobRepo.deleteUnreferenced(released);
+        }
+        Set<String> retained = new HashSet<>(blobKeys);
+        released.forEach(retained::remove);
+        return retained;
+    }
+
+    // Remove objects in DeleteObjects calls of up to 1000 keys; failures are logged and left to the reconciler
+    void deleteObjects(List<String> keys) {
+        for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_REQUEST) {
+            List<String> chunk = keys.subList(from, Math.min(keys.size(), from + MAX_KEYS_PER_REQUEST));
+            List<ObjectIdentifier> objects = chunk.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList();
+            try {
+                DeleteObjectsResponse response = s3Client.deleteObjects(b -> b.bucket(bucketName)
+                        .delete(d -> d.objects(objects).quiet(true)));
+                if (response.hasErrors() && !response.errors().isEmpty()) {
+                    S3Error first = response.errors().get(0);
+                    log.warn("Could not delete {} of {} objects, e.g. {}: {}", response.errors().size(), chunk.size(),
+                            first.key(), first.message());
+                }
+            } catch (S3Exception e) {
+                // The rows are gone already; the reconciler removes these objects later
+                log.warn("Could not delete {} objects from {} to {}: {}", chunk.size(), chunk.get(0), chunk.get(chunk.size() - 1),
+                        e.getMessage());
+            }
+            chunk.forEach(objectCache::invalidate);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.rest.s3.cache.CachedObject;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.Abortable;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Result of a download: the object body (if any) plus the headers needed for range and conditional responses
+public class FileDownload {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final Pattern ACTUAL_OBJECT_SIZE = Pattern.compile("<ActualObjectSize>(\\d+)</ActualObjectSize>");
+
+    private final int status;
+    private final InputStream body;
+    private final long contentLength;
+    private final String contentRange;
+    private final String eTag;
+    private final Instant lastModified;
+    // Content-Encoding of the body as sent, and whether the response depends on Accept-Encoding
+    private final String contentEncoding;
+    private final boolean encodingNegotiated;
+
+    public FileDownload(int status, InputStream body, long contentLength, String contentRange, String eTag, Instant lastModified) {
+        this(status, body, contentLength, contentRange, eTag, lastModified, null, false);
+    }
+
+    private FileDownload(int status, InputStream body, long contentLength, String contentRange, String eTag, Instant lastModified,
+            String contentEncoding, boolean encodingNegotiated) {
+        this.status = status;
+        this.body = body;
+        this.contentLength = contentLength;
+        this.contentRange = contentRange;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentEncoding = contentEncoding;
+        this.encodingNegotiated = encodingNegotiated;
+    }
+
+    public static FileDownload of(ResponseInputStream<GetObjectResponse> s3Object) {
+        return of(s3Object.response(), s3Object);
+    }
+
+    // Headers from the GetObject response, with the body delivered as the given stream
+    public static FileDownload of(GetObjectResponse response, InputStream body) {
+        int status = response.contentRange() != null ? 206 : 200;
+        long contentLength = response.contentLength() != null ? response.contentLength() : -1;
+        return new FileDownload(status, body, contentLength, response.contentRange(), response.eTag(), response.lastModified());
+    }
+
+    // S3 answers a failed precondition or unsatisfiable range with an error status; map those to a bodiless result
+    public static FileDownload fromConditionalFailure(S3Exception e) {
+        if (e.statusCode() != 304 && e.statusCode() != 412 && e.statusCode() != 416) {
+            return null;
+        }
+        String eTag = e.awsErrorDetails() != null && e.awsErrorDetails().sdkHttpResponse() != null
+                ? e.awsErrorDetails().sdkHttpResponse().firstMatchingHeader("ETag").orElse(null)
+                : null;
+        if (e.statusCode() == 416) {
+            return new FileDownload(416, null, -1, unsatisfiedRange(e), eTag, null);
+        }
+        return withoutBody(e.statusCode(), eTag);
+    }
+
+    // "bytes */<length>" for a 416 from S3: from its Content-Range header if present, otherwise from the
+    // ActualObjectSize of the InvalidRange error body; null if neither is there
+    private static String unsatisfiedRange(S3Exception e) {
+        if (e.awsErrorDetails() == null) {
+            return null;
+        }
+        if (e.awsErrorDetails().sdkHttpResponse() != null) {
+            String contentRange = e.awsErrorDetails().sdkHttpResponse().firstMatchingHeader("Content-Range").orElse(null);
+            if (contentRange != null) {
+                return contentRange;
+            }
+        }
+        if (e.awsErrorDetails().rawResponse() != null) {
+            Matcher size = ACTUAL_OBJECT_SIZE.matcher(e.awsErrorDetails().rawResponse().asUtf8String());
+            if (size.find()) {
+                return "bytes */" + size.group(1);
+            }
+        }
+        return null;
+    }
+
+    // Serve a cached copy, evaluating the conditional and range headers the way S3 would
+    public static FileDownload fromCache(CachedObject cached, DownloadOptions options) throws IOException {
+        FileDownload notModified = notModified(options, cached.getETag(), cached.getLastModified());
+        if (notModified != null) {
+            return notModified;
+        }
+
+        long length = cached.getLength();
+        if (!options.isPartial()) {
+            return new FileDownload(200, cached.openStream(0, length), length, null, cached.getETag(), cached.getLastModified());
+        }
+        long[] range = parseRange(options.range(), length);
+        if (range == null) {
+            return new FileDownload(416, null, -1, "bytes */" + length, cached.getETag(), cached.getLastModified());
+        }
+        long count = range[1] - range[0] + 1;
+        return new FileDownload(206, cached.openStream(range[0], count), count,
+                "bytes " + range[0] + "-" + range[1] + "/" + length, cached.getETag(), cached.getLastModified());
+    }
+
+    // A 304 if If-None-Match (or, without it, If-Modified-Since) matches the given validators; null otherwise
+    public static FileDownload notModified(DownloadOptions options, String eTag, Instant lastModified) {
+        if (options.ifNoneMatch() != null) {
+            if (matchesETag(options.ifNoneMatch(), eTag)) {
+                return withoutBody(304, eTag);
+            }
+        } else if (options.ifModifiedSince() != null && lastModified != null
+                && !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(options.ifModifiedSince())) {
+            return withoutBody(304, eTag);
+        }
+        return null;
+    }
+
+    // Resolve "bytes=a-b", "bytes=a-" or "bytes=-n" against the object length; null if unsatisfiable
+    static long[] parseRange(String range, long length) {
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
+            }
+            return start < length && start <= end ? new long[] { start, end } : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String eTag) {
+        if (eTag == null) {
+            return false;
+        }
+        String current = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static FileDownload withoutBody(int status, String eTag) {
+        return new FileDownload(status, null, -1, null, eTag, null);
+    }
+
+    // Same download with the body replaced, e.g. by a stream that also fills the cache
+    public FileDownload withBody(InputStream newBody) {
+        return new FileDownload(status, newBody, contentLength, contentRange, eTag, lastModified, contentEncoding, encodingNegotiated);
+    }
+
+    // Same download carrying the given validators instead of those of the object it was read from
+    public FileDownload withValidators(String newETag, Instant newLastModified) {
+        return new FileDownload(status, body, contentLength, contentRange, newETag, newLastModified, contentEncoding, encodingNegotiated);
+    }
+
+    // Same download sent as stored, labelled with the encoding of the stored bytes
+    public FileDownload withContentEncoding(String encoding) {
+        return new FileDownload(status, body, contentLength, contentRange, eTag, lastModified, body != null ? encoding : null, true);
+    }
+
+    // Same download with a gzip body decoded while streaming. The decoded length is unknown up front, and the
+    // ETag becomes weak since it describes the stored bytes rather than this representation.
+    public FileDownload gunzipped() {
+        String weakETag = eTag != null && !eTag.startsWith("W/") ? "W/" + eTag : eTag;
+        InputStream decoded = body != null ? new GunzippingInputStream(body) : null;
+        return new FileDownload(status, decoded, decoded != null ? -1 : contentLength, contentRange, weakETag, lastModified, null, true);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public String getContentRange() {
+        return contentRange;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public boolean isEncodingNegotiated() {
+        return encodingNegotiated;
+    }
+
+    // Stream the body to the client through a fixed small buffer; on a broken connection the
+    // S3 stream is aborted instead of drained so the pooled connection is not tied up
+    public void writeTo(OutputStream out) throws IOException {
+        if (body == null) {
+            return;
+        }
+        try (InputStream in = body) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                try {
+                    out.write(buffer, 0, read);
+                } catch (IOException e) {
+                    abort();
+                    throw e;
+                }
+            }
+            out.flush();
+        }
+    }
+
+    public void abort() {
+        if (body instanceof Abortable abortable) {
+            abortable.abort();
+        }
+    }
+
+    // Release a body that will not be sent: an S3 stream is aborted rather than drained, anything else closed
+    public void discard() {
+        if (body == null) {
+            return;
+        }
+        abort();
+        try {
+            body.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    // Decodes on first read, so no body bytes are awaited on the thread that builds the response,
+    // and keeps the underlying S3 stream abortable through the decoder
+    private static final class GunzippingInputStream extends InputStream implements Abortable {
+
+        private final InputStream source;
+        private GZIPInputStream decoder;
+
+        GunzippingInputStream(InputStream source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoder().read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return decoder().read(b, off, len);
+        }
+
+        private GZIPInputStream decoder() throws IOException {
+            if (decoder == null) {
+                decoder = new GZIPInputStream(source, BUFFER_SIZE);
+            }
+            return decoder;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+        @Override
+        public void abort() {
+            if (source instanceof Abortable abortable) {
+                abortable.abort();
+            }
+        }
+    }
+}
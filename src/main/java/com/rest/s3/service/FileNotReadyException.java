@@ -0,0 +1,10 @@
+package com.rest.s3.service;
+
+// The file exists but its content cannot be read here yet: a write-behind upload whose spool file is held by
+// another node (or was lost) and that has not been flushed to S3. Answered with 503 and Retry-After.
+public class FileNotReadyException extends RuntimeException {
+
+    public FileNotReadyException(Long attachmentId) {
+        super("File " + attachmentId + " is still being uploaded. Please retry shortly.");
+    }
+}
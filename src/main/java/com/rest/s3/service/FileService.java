@@ -2,30 +2,48 @@ package com.rest.s3.service;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map; 
 import java.util.LinkedHashMap; 
-import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.rest.s3.cache.CachedObject;
+import com.rest.s3.cache.FileAccessCache;
+import com.rest.s3.cache.ObjectCache;
+import com.rest.s3.metrics.S3Metrics;
+import com.rest.s3.model.FileAccess;
 import com.rest.s3.model.FileData;
+import com.rest.s3.model.FileSummary;
+import com.rest.s3.model.UploadState;
 import com.rest.s3.model.UserData;
 import com.rest.s3.repository.FileRepo;
 import com.rest.s3.repository.UserRepo;
 
 import software.amazon.awssdk.core.ResponseInputStream;
-import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
 @Service
@@ -38,23 +56,38 @@ public class FileService {
 
     private final FileRepo fileRepo;
     private final UserRepo userRepo;
-
-    public FileService(S3Client s3Client, String bucketName, FileRepo fileRepo, UserRepo userRepo) {
+    private final S3MultipartUploader s3Uploader;
+    private final ObjectCache objectCache;
+    private final FileAccessCache fileAccessCache;
+    private final BlobStore blobStore;
+    private final S3Metrics s3Metrics;
+    private final ContentCodec contentCodec;
+    private final UploadSpool uploadSpool;
+    private final KeyLayout keyLayout;
+    // Ids of the PENDING rows whose upload is running on this node, refreshed by touchUploadsInProgress
+    private final Set<Long> uploadsInProgress = ConcurrentHashMap.newKeySet();
+
+    public FileService(S3Client s3Client, String bucketName, FileRepo fileRepo, UserRepo userRepo, S3MultipartUploader s3Uploader,
+            ObjectCache objectCache, FileAccessCache fileAccessCache, BlobStore blobStore, S3Metrics s3Metrics,
+            ContentCodec contentCodec, UploadSpool uploadSpool, KeyLayout keyLayout) {
         super();
         this.s3Client = s3Client;
         this.bucketName = bucketName;
         this.fileRepo = fileRepo;
         this.userRepo = userRepo;
+        this.s3Uploader = s3Uploader;
+        this.objectCache = objectCache;
+        this.fileAccessCache = fileAccessCache;
+        this.blobStore = blobStore;
+        this.s3Metrics = s3Metrics;
+        this.contentCodec = contentCodec;
+        this.uploadSpool = uploadSpool;
+        this.keyLayout = keyLayout;
     }
 
     // Upload file and save metadata
     public String uploadFile(MultipartFile file, Long userId) throws IOException {
-        validateFile(file);
-        if (userId < 1) {
-            throw new IllegalArgumentException("User ID should be positive.");
-        }
-        UserData user = userRepo.findById(userId)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid user"));
+        UserData user = validateUpload(file, userId);
 
         String fileName = file.getOriginalFilename();
         String contentType = file.getContentType();
@@ -64,43 +97,220 @@ public class FileService {
         return "File uploaded successfully: " + fileName;
     }
 
+    // Validate the file and resolve the uploading user
+    UserData validateUpload(MultipartFile file, Long userId) {
+        validateFile(file);
+        return findUploader(userId);
+    }
+
+    UserData findUploader(Long userId) {
+        if (userId < 1) {
+            throw new IllegalArgumentException("User ID should be positive.");
+        }
+        return userRepo.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid user"));
+    }
+
     // Validate file type and filename
-    private void validateFile(MultipartFile file) {
-        String fileType = file.getContentType();
+    void validateFile(MultipartFile file) {
+        validateFile(file.getContentType(), file.getOriginalFilename());
+    }
+
+    void validateFile(String fileType, String originalFilename) {
         if (fileType == null || (!fileType.equals("image/jpeg") && !fileType.equals("image/png") &&
                 !fileType.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document"))) {
             throw new IllegalArgumentException("Invalid file type. Only JPG, PNG, and DOCX files are allowed.");
         }
-        if (file.getOriginalFilename() == null) {
+        if (originalFilename == null) {
             throw new IllegalArgumentException("File name is invalid");
         }
     }
 
-    // Save file metadata in the database
+    // Save file metadata as PENDING, store the object, then commit the row; a failed upload removes the row again
     private void saveFileMetadataAndUploadFileToS3(MultipartFile file, UserData user, String fileName, String contentType) throws IOException {
+        FileData fileData = saveFileMetadata(user, fileName, contentType);
+
+        try {
+            storeObject(file, fileData);
+            commitUpload(fileData);
+        } catch (S3Exception e) {
+            discardUpload(fileData);
+            throw new IllegalArgumentException("Error occurred during file upload: " + e.awsErrorDetails().errorMessage());
+        } catch (IOException | RuntimeException e) {
+            discardUpload(fileData);
+            throw e;
+        }
+    }
+
+    // Store the content of a saved FileData row in S3
+    void storeObject(MultipartFile file, FileData fileData) throws IOException {
+        if (blobStore.isEnabled()) {
+            // Identical content is stored once; a duplicate only takes another reference on the existing blob
+            attachContent(fileData, blobStore.store(file));
+            return;
+        }
+
+        String newFileName = assignObjectKey(fileData);
+        // Large files go through a parallel multipart upload, small ones through a single put
+        try (InputStream fileInputStream = file.getInputStream()) {
+            ContentCodec.Encoded encoded = contentCodec.encode(fileInputStream, fileData.getFileType(), file.getSize());
+            recordCodec(fileData, encoded.codec());
+            s3Uploader.upload(newFileName, fileData.getFileType(), encoded.codec(), encoded.stream(), encoded.size());
+            objectCache.invalidate(newFileName);
+        }
+    }
+
+    // Record the storage codec before the encoded object is written, so it is never served undecoded
+    void recordCodec(FileData fileData, String codec) {
+        if (codec == null) {
+            return;
+        }
+        fileData.setCodec(codec);
+        fileRepo.save(fileData);
+        fileAccessCache.invalidate(fileData.getId());
+    }
+
+    // Mark a row whose content has reached S3. Merging a row that is gone fails rather than inserting it again,
+    // so an upload whose row was removed as abandoned is reported as failed; its object is left to the orphan sweep.
+    void commitUpload(FileData fileData) {
+        uploadEnded(fileData.getId());
+        fileData.setState(UploadState.COMMITTED);
+        try {
+            fileRepo.save(fileData);
+        } catch (OptimisticLockingFailureException e) {
+            throw new IllegalStateException("File " + fileData.getId() + " was removed before its upload completed", e);
+        } finally {
+            fileAccessCache.invalidate(fileData.getId());
+        }
+    }
+
+    void commitUploads(List<FileData> rows) {
+        rows.forEach(fileData -> uploadEnded(fileData.getId()));
+        rows.forEach(fileData -> fileData.setState(UploadState.COMMITTED));
+        fileRepo.saveAll(rows);
+        rows.forEach(fileData -> fileAccessCache.invalidate(fileData.getId()));
+    }
+
+    // Remove the row of an upload that did not complete. A row that took a blob reference (attachContent) gives it
+    // back; only the call that actually removes the row does, so a row discarded twice releases it once.
+    void discardUpload(FileData fileData) {
+        uploadEnded(fileData.getId());
+        boolean removed = fileRepo.deletePending(fileData.getId()) > 0;
+        fileAccessCache.invalidate(fileData.getId());
+        if (removed && fileData.getContentHash() != null) {
+            blobStore.release(fileData.getStorageKey());
+        }
+    }
+
+    // discardUpload for many rows: those without a blob reference are removed in one batched delete
+    void discardUploads(List<FileData> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (FileData fileData : rows) {
+            if (fileData.getContentHash() != null) {
+                discardUpload(fileData);
+            } else {
+                uploadEnded(fileData.getId());
+                ids.add(fileData.getId());
+            }
+        }
+        if (!ids.isEmpty()) {
+            fileRepo.deleteAllByIdInBatch(ids);
+            ids.forEach(fileAccessCache::invalidate);
+        }
+    }
+
+    // Remove the object of an upload whose row was discarded; one that cannot be removed is left to the reconciler
+    void deleteUploadedObject(String key) {
+        try {
+            s3Client.deleteObject(b -> b.bucket(bucketName).key(key));
+        } catch (S3Exception e) {
+            // Unreferenced, so the reconciler's object sweep removes it
+        }
+        objectCache.invalidate(key);
+    }
+
+    // Track a saved PENDING row while its upload runs here; the heartbeat keeps it from looking abandoned
+    void uploadStarted(FileData fileData) {
+        uploadsInProgress.add(fileData.getId());
+    }
+
+    void uploadEnded(Long id) {
+        uploadsInProgress.remove(id);
+    }
+
+    // Heartbeat of the uploads running on this node. The reconciler removes PENDING rows not updated for its
+    // pendingGrace, so refreshing lastUpdatedOn well within that grace protects uploads that take longer than it.
+    // PENDING rows are not listed, and the commit writes back the original timestamp.
+    @Scheduled(fixedDelayString = "${files.uploads.heartbeat:5m}", initialDelayString = "${files.uploads.heartbeat:5m}")
+    public void touchUploadsInProgress() {
+        List<Long> ids = new ArrayList<>(uploadsInProgress);
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < ids.size(); from += 1000) {
+            fileRepo.touchPending(ids.subList(from, Math.min(ids.size(), from + 1000)), now);
+        }
+    }
+
+    // Persist the FileData row for a new upload
+    FileData saveFileMetadata(UserData user, String fileName, String contentType) {
+        return saveFileMetadata(user, fileName, contentType, null);
+    }
+
+    // Persist the FileData row for content already stored under storageKey, which makes it committed right away
+    FileData saveFileMetadata(UserData user, String fileName, String contentType, String storageKey) {
+        FileData fileData = newFileData(user, fileName, contentType);
+        fileData.setStorageKey(storageKey);
+        if (storageKey != null) {
+            fileData.setState(UploadState.COMMITTED);
+        }
+
+        fileRepo.save(fileData);
+        if (storageKey == null) {
+            uploadStarted(fileData);
+        }
+        fileAccessCache.invalidate(fileData.getId());
+        return fileData;
+    }
+
+    // Point a FileData row at the deduplicated blob holding its content
+    void attachContent(FileData fileData, BlobStore.StoredContent content) {
+        fileData.setStorageKey(content.storageKey());
+        fileData.setContentHash(content.digest());
+        fileRepo.save(fileData);
+        fileAccessCache.invalidate(fileData.getId());
+    }
+
+    FileData newFileData(UserData user, String fileName, String contentType) {
         FileData fileData = new FileData();
         fileData.setFileName(fileName);
         fileData.setFileType(contentType);
         fileData.setLastUpdatedOn(LocalDateTime.now());
         fileData.setUser(user);
+        fileData.setState(UploadState.PENDING);
+        return fileData;
+    }
 
-        fileRepo.save(fileData);
-
-        Long attachmentId = fileData.getId();
-        String newFileName = attachmentId + "_" + fileName;  // Unique file name using attachmentId
-        InputStream fileInputStream = file.getInputStream();
+    // S3 key of a row stored before keys were recorded (null storageKey)
+    String objectKey(Long attachmentId, String fileName) {
+        return LegacyKeyLayout.key(attachmentId, fileName);
+    }
 
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(bucketName)
-                .key(newFileName)
-                .contentType(contentType)
-                .build();
+    // Choose the S3 key of a new upload from the configured layout. It is saved with the row's next
+    // update (the codec or the commit), and is the same on every retry of the upload.
+    String assignObjectKey(FileData fileData) {
+        String key = keyLayout.objectKey(fileData.getId(), fileData.getFileName());
+        fileData.setStorageKey(key);
+        return key;
+    }
 
-        try {
-            s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(fileInputStream, file.getSize()));
-        } catch (S3Exception e) {
-            throw new IllegalArgumentException("Error occurred during file upload: " + e.awsErrorDetails().errorMessage());
+    // Where the object of an uncommitted row can be: its recorded key, else the layout key it records on commit,
+    // or the legacy key for rows saved before keys were recorded
+    List<String> pendingObjectKeys(FileData fileData) {
+        if (fileData.getStorageKey() != null) {
+            return List.of(fileData.getStorageKey());
         }
+        String key = keyLayout.objectKey(fileData.getId(), fileData.getFileName());
+        String legacyKey = objectKey(fileData.getId(), fileData.getFileName());
+        return key.equals(legacyKey) ? List.of(key) : List.of(key, legacyKey);
     }
 
     // Get files with pagination and optional userId filter
@@ -113,15 +323,15 @@ public class FileService {
         }
 
         Pageable pageable = PageRequest.of(page - 1, size, Sort.by(Sort.Order.desc("lastUpdatedOn")));
-        Page<FileData> filePage;
+        Page<FileSummary> filePage;
 
         if (userId != null) {
             if (userId < 1) {
                 throw new IllegalArgumentException("userId should be positive");
             }
-            filePage = fileRepo.findByUserId(userId, pageable);
+            filePage = fileRepo.findSummariesByUserId(userId, pageable);
         } else {
-            filePage = fileRepo.findAll(pageable);
+            filePage = fileRepo.findAllSummaries(pageable);
         }
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("totalCount", filePage.getTotalElements());
@@ -133,49 +343,298 @@ public class FileService {
         return response;
     }
 
+    // Get files by seeking past an opaque (lastUpdatedOn, id) cursor; an empty cursor starts from the newest file.
+    // Constant cost per page regardless of depth, and the total count is only computed on request.
+    public Map<String, Object> getFilesAfter(Long userId, String cursor, int size, boolean includeTotal) {
+        if (size < 1) {
+            size = 15;
+        }
+        if (userId != null && userId < 1) {
+            throw new IllegalArgumentException("userId should be positive");
+        }
+
+        // One extra row tells us whether another page exists
+        Pageable limit = PageRequest.of(0, size + 1);
+        List<FileSummary> files;
+        if (cursor == null || cursor.isEmpty()) {
+            files = userId != null ? fileRepo.findFirstKeysetPageByUserId(userId, limit) : fileRepo.findFirstKeysetPage(limit);
+        } else {
+            FileSummary after = decodeCursor(cursor);
+            files = userId != null
+                    ? fileRepo.findKeysetPageByUserId(userId, after.lastUpdatedOn(), after.id(), limit)
+                    : fileRepo.findKeysetPage(after.lastUpdatedOn(), after.id(), limit);
+        }
+
+        boolean hasMore = files.size() > size;
+        if (hasMore) {
+            files = files.subList(0, size);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (includeTotal) {
+            response.put("totalCount", userId != null ? fileRepo.countByUserId(userId) : fileRepo.countListed());
+        }
+        response.put("pageSize", size);
+        response.put("nextCursor", hasMore ? encodeCursor(files.get(files.size() - 1)) : null);
+        response.put("files", files);
+
+        return response;
+    }
+
+    // Search a user's files by name, case-insensitively. "prefix" matches the start of the name, "contains" any part of it;
+    // substring queries shorter than a trigram cannot use the trigram index and scan the user's rows instead.
+    public Map<String, Object> searchFiles(Long userId, String query, String mode, int page, int size) {
+        if (userId == null || userId < 1) {
+            throw new IllegalArgumentException("User ID should be positive.");
+        }
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is required.");
+        }
+        if (query.length() > 255) {
+            throw new IllegalArgumentException("Search query is too long.");
+        }
+        boolean contains;
+        if (mode == null || mode.equals("contains")) {
+            contains = true;
+        } else if (mode.equals("prefix")) {
+            contains = false;
+        } else {
+            throw new IllegalArgumentException("Invalid search mode. Use prefix or contains.");
+        }
+        if (page < 1) {
+            page = 1;
+        }
+        if (size < 1) {
+            size = 15;
+        }
+
+        String escaped = query.toLowerCase(Locale.ROOT).replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        String pattern = (contains ? "%" : "") + escaped + "%";
+        // One extra row tells us whether another page exists, without counting every match
+        List<FileSummary> files = fileRepo.searchByFileName(userId, pattern, PageRequest.of(page - 1, size + 1));
+        boolean hasMore = files.size() > size;
+        if (hasMore) {
+            files = files.subList(0, size);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("pageSize", size);
+        response.put("currentPage", page);
+        response.put("hasMore", hasMore);
+        response.put("files", files);
+        return response;
+    }
+
+    private String encodeCursor(FileSummary last) {
+        String position = last.lastUpdatedOn() + "|" + last.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private FileSummary decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf('|');
+            return new FileSummary(Long.parseLong(position.substring(separator + 1)), null, null,
+                    LocalDateTime.parse(position.substring(0, separator)), null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
     // Download file if authorized
-    public InputStream downloadFile(String filename, Long userId, Long attachmentId) throws IOException {
+    public FileDownload downloadFile(String filename, Long userId, Long attachmentId, DownloadOptions options) throws IOException {
+        return download(authorize(filename, userId, attachmentId), filename, options);
+    }
+
+    // Serve an authorized file from the spool, the cache or S3, decoding it unless the client takes the stored encoding
+    FileDownload download(FileAccess access, String filename, DownloadOptions options) throws IOException {
+        FileDownload spooled = spooledDownload(access, options);
+        if (spooled != null) {
+            return spooled;
+        }
+        FileAccess flushed = flushedAccess(access);
+        String newFileName = storageKey(flushed, filename);
+        if (flushed.codec() == null) {
+            return downloadObject(newFileName, options, false);
+        }
+        FileDownload encoded = downloadObject(newFileName, contentCodec.encodedOptions(options), false);
+        return contentCodec.present(encoded, flushed.codec(), options);
+    }
+
+    // The access to serve a file by: as it is when its content is in S3 or in this node's spool, otherwise see flushedAccess
+    FileAccess readableAccess(FileAccess access) {
+        if (access.state() == UploadState.SPOOLED && uploadSpool.contains(access.attachmentId())) {
+            return access;
+        }
+        return flushedAccess(access);
+    }
+
+    // The access to read a file from S3 by. A SPOOLED access (possibly cached) is read again, since the upload may
+    // have been flushed meanwhile under its final key; if it is still spooled, the content is only on another
+    // node's spool, or was lost with it, and cannot be served from here.
+    FileAccess flushedAccess(FileAccess access) {
+        if (access.state() != UploadState.SPOOLED) {
+            return access;
+        }
+        fileAccessCache.invalidate(access.attachmentId());
+        FileAccess current = fileRepo.findAccessById(access.attachmentId()).orElse(null);
+        if (current == null) {
+            throw new IllegalArgumentException("No record found with the given attachmentId: " + access.attachmentId());
+        }
+        if (current.state() == UploadState.SPOOLED) {
+            throw new FileNotReadyException(access.attachmentId());
+        }
+        return current;
+    }
+
+    // Write-behind uploads not yet flushed are served from the local spool. Null once flushed
+    // (the row read may predate the flush) or when another node holds the spool file.
+    FileDownload spooledDownload(FileAccess access, DownloadOptions options) throws IOException {
+        if (access.state() != UploadState.SPOOLED) {
+            return null;
+        }
+        return uploadSpool.open(access.attachmentId(), options);
+    }
+
+    // Serve an object by key from the cache or S3. With allowMissing a missing object yields null instead of an error.
+    FileDownload downloadObject(String newFileName, DownloadOptions options, boolean allowMissing) throws IOException {
+        CachedObject cached = objectCache.get(newFileName);
+        if (cached != null) {
+            try {
+                return FileDownload.fromCache(cached, options);
+            } catch (NoSuchFileException e) {
+                // Evicted or invalidated from the disk tier since the lookup: a miss like any other
+            }
+        }
+
+        FileDownload download = getFileFromS3(newFileName, options, allowMissing);
+        if (download == null) {
+            return null;
+        }
+        if (download.getStatus() == 200 && !options.isPartial()) {
+            // Full reads fill the cache as the client consumes them
+            download = download.withBody(objectCache.capture(newFileName, download.getBody(),
+                    download.getContentLength(), download.getETag(), download.getLastModified()));
+        }
+        return download;
+    }
+
+    // ETag and Last-Modified of an object, from the cache or a HEAD request, as a download without a body
+    FileDownload objectValidators(String key) throws IOException {
+        CachedObject cached = objectCache.get(key);
+        if (cached != null) {
+            return new FileDownload(200, null, cached.getLength(), null, cached.getETag(), cached.getLastModified());
+        }
+        try {
+            HeadObjectResponse head = s3Client.headObject(b -> b.bucket(bucketName).key(key));
+            return new FileDownload(200, null, head.contentLength(), null, head.eTag(), head.lastModified());
+        } catch (S3Exception e) {
+            throw new IOException("Error occurred while fetching file from S3: " + e.getMessage());
+        }
+    }
+
+    // Check that the user owns the attachment and resolve its S3 object key; the content must be in S3 already
+    String authorizeDownload(String filename, Long userId, Long attachmentId) {
+        return storageKey(flushedAccess(authorize(filename, userId, attachmentId)), filename);
+    }
+
+    // Check that the user owns the attachment
+    FileAccess authorize(String filename, Long userId, Long attachmentId) {
         if (userId < 1) {
             throw new IllegalArgumentException("User ID should be positive.");
         }
 
-        
-        Optional<FileData> fileDataOptional = fileRepo.findById(attachmentId);
-        FileData fileData = fileDataOptional.orElseThrow(() ->
-                new IllegalArgumentException("No record found with the given attachmentId: " + attachmentId));
-
-       
-        Optional<UserData> userOptional = userRepo.findById(userId);
-        UserData user = userOptional.orElseThrow(() ->
-                new IllegalArgumentException("No record found with the given userId: " + userId));
+        // One cached projection lookup replaces the file, user and owner round trips
+        FileAccess access = fileAccessCache.get(attachmentId, id -> fileRepo.findAccessById(id).orElse(null));
+        if (access == null) {
+            throw new IllegalArgumentException("No record found with the given attachmentId: " + attachmentId);
+        }
 
-        
-        if (!fileData.getUser().getId().equals(userId)) {
+        if (!access.ownerId().equals(userId)) {
+            // The owner always exists, so only a mismatch needs the user lookup to pick the right message
+            if (!userRepo.existsById(userId)) {
+                throw new IllegalArgumentException("No record found with the given userId: " + userId);
+            }
             throw new IllegalArgumentException("User with ID " + userId + " does not have access to the file: " + filename);
         }
 
-        
-        String newFileName = attachmentId + "_" + filename;
+        return access;
+    }
 
-        
-        return getFileFromS3(newFileName);
+    // Check that the user owns every attachment, with one query for the lot. The result follows the order of
+    // attachmentIds, without duplicates; uploads still pending are treated as missing.
+    List<FileAccess> authorizeAll(Long userId, List<Long> attachmentIds) {
+        if (userId < 1) {
+            throw new IllegalArgumentException("User ID should be positive.");
+        }
+        Set<Long> ids = new LinkedHashSet<>(attachmentIds);
+        Map<Long, FileAccess> found = new HashMap<>();
+        for (FileAccess access : fileRepo.findAccessByIdIn(ids)) {
+            found.put(access.attachmentId(), access);
+        }
+
+        List<FileAccess> accesses = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            FileAccess access = found.get(id);
+            if (access == null || access.state() == UploadState.PENDING) {
+                throw new IllegalArgumentException("No record found with the given attachmentId: " + id);
+            }
+            if (!access.ownerId().equals(userId)) {
+                if (!userRepo.existsById(userId)) {
+                    throw new IllegalArgumentException("No record found with the given userId: " + userId);
+                }
+                throw new IllegalArgumentException("User with ID " + userId + " does not have access to the file: " + access.fileName());
+            }
+            accesses.add(access);
+        }
+        return accesses;
     }
 
-    // Retrieve the file from S3
-    private InputStream getFileFromS3(String newFileName) throws IOException {
-        try {
-            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                    .bucket(bucketName)
-                    .key(newFileName)
-                    .build();
+    String storageKey(FileAccess access, String filename) {
+        return access.storageKey() != null ? access.storageKey() : objectKey(access.attachmentId(), filename);
+    }
 
-            ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(getObjectRequest);
-            return s3Object;
+    // Retrieve the file (or the requested range of it) from S3
+    private FileDownload getFileFromS3(String newFileName, DownloadOptions options, boolean allowMissing) throws IOException {
+        try {
+            ResponseInputStream<GetObjectResponse> s3Object = s3Client.getObject(getObjectRequest(newFileName, options));
+            FileDownload download = FileDownload.of(s3Object);
+            return download.withBody(s3Metrics.trackDownload(download.getBody()));
         } catch (S3Exception e) {
+            if (allowMissing && e instanceof NoSuchKeyException) {
+                return null;
+            }
+            FileDownload withoutBody = FileDownload.fromConditionalFailure(e);
+            if (withoutBody != null && withoutBody.getStatus() == 416 && withoutBody.getContentRange() == null) {
+                return unsatisfiableRange(newFileName, withoutBody);
+            }
+            if (withoutBody != null) {
+                return withoutBody;
+            }
             throw new IOException("Error occurred while fetching file from S3: " + e.awsErrorDetails().errorMessage());
         }
     }
 
+    // A 416 must carry the object length; look it up when the S3 error did not include it
+    private FileDownload unsatisfiableRange(String key, FileDownload withoutBody) {
+        try {
+            long length = s3Client.headObject(b -> b.bucket(bucketName).key(key)).contentLength();
+            return new FileDownload(416, null, -1, "bytes */" + length, withoutBody.getETag(), null);
+        } catch (S3Exception e) {
+            return withoutBody;
+        }
+    }
+
+    GetObjectRequest getObjectRequest(String key, DownloadOptions options) {
+        return GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range(options.range())
+                .ifNoneMatch(options.ifNoneMatch())
+                .ifModifiedSince(options.ifModifiedSince())
+                .build();
+    }
+
     // Get content type based on filename extension
     public String getFileContentType(String filename) {
         if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) {
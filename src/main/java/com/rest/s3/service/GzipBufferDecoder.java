@@ -0,0 +1,106 @@
+package com.rest.s3.service;
+
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Decodes a gzip member delivered as a sequence of buffers, for bodies that are published rather than read from
+// a stream. The header may span buffers and is skipped once complete; the trailer after the deflate data is ignored.
+final class GzipBufferDecoder {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int CHUNK_SIZE = 16384;
+
+    private final Inflater inflater = new Inflater(true);
+    // Header bytes received so far, until the whole header is in
+    private byte[] header = new byte[0];
+    private boolean ended;
+
+    synchronized List<ByteBuffer> decode(ByteBuffer buffer) {
+        byte[] input = new byte[buffer.remaining()];
+        buffer.get(input);
+        List<ByteBuffer> decoded = new ArrayList<>();
+        if (header != null) {
+            byte[] received = Arrays.copyOf(header, header.length + input.length);
+            System.arraycopy(input, 0, received, header.length, input.length);
+            int length = headerLength(received);
+            if (length < 0) {
+                header = received;
+                return decoded;
+            }
+            header = null;
+            input = Arrays.copyOfRange(received, length, received.length);
+        }
+        if (ended || inflater.finished()) {
+            return decoded;
+        }
+        inflater.setInput(input);
+        try {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            while (!inflater.finished() && !inflater.needsInput()) {
+                int read = inflater.inflate(chunk);
+                if (read == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new UncheckedIOException(new ZipException("Unsupported gzip stream"));
+                    }
+                    break;
+                }
+                decoded.add(ByteBuffer.wrap(Arrays.copyOf(chunk, read)));
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new ZipException(e.getMessage()));
+        }
+        return decoded;
+    }
+
+    // Release the inflater once the body is complete, failed or cancelled
+    synchronized void end() {
+        ended = true;
+        inflater.end();
+    }
+
+    // Length of the gzip header at the start of the bytes, or -1 if more bytes are needed
+    private static int headerLength(byte[] bytes) {
+        if (bytes.length < 10) {
+            return -1;
+        }
+        if ((bytes[0] & 0xff) != 0x1f || (bytes[1] & 0xff) != 0x8b || bytes[2] != 8) {
+            throw new UncheckedIOException(new ZipException("Not in GZIP format"));
+        }
+        int flags = bytes[3] & 0xff;
+        int position = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (bytes.length < position + 2) {
+                return -1;
+            }
+            position += 2 + ((bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(bytes, position);
+        }
+        if ((flags & FCOMMENT) != 0 && position >= 0) {
+            position = skipZeroTerminated(bytes, position);
+        }
+        if ((flags & FHCRC) != 0 && position >= 0) {
+            position += 2;
+        }
+        return position >= 0 && position <= bytes.length ? position : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int position) {
+        for (int i = position; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
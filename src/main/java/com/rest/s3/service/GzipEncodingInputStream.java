@@ -0,0 +1,79 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+// Gzip-compresses a stream as it is read, so an upload can be encoded without a pipe thread or a spooled copy
+final class GzipEncodingInputStream extends InputStream {
+
+    // Magic, deflate, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater;
+    private final InputStream deflated;
+    private byte[] pending = HEADER;
+    private int pendingPos;
+    private boolean trailerWritten;
+
+    GzipEncodingInputStream(InputStream in, int level) {
+        this.deflater = new Deflater(level, true);
+        this.deflated = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater, 8192);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            if (pendingPos < pending.length) {
+                int n = Math.min(len, pending.length - pendingPos);
+                System.arraycopy(pending, pendingPos, b, off, n);
+                pendingPos += n;
+                return n;
+            }
+            if (trailerWritten) {
+                return -1;
+            }
+            int n = deflated.read(b, off, len);
+            if (n > 0) {
+                return n;
+            }
+            if (n < 0) {
+                // CRC and input size are only known once the source is exhausted
+                pending = trailer(crc.getValue(), deflater.getBytesRead());
+                pendingPos = 0;
+                trailerWritten = true;
+            }
+        }
+    }
+
+    private static byte[] trailer(long crc, long size) {
+        byte[] trailer = new byte[8];
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (crc >>> (8 * i));
+            trailer[4 + i] = (byte) (size >>> (8 * i));
+        }
+        return trailer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            deflated.close();
+        } finally {
+            deflater.end();
+        }
+    }
+}
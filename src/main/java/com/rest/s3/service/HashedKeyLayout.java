@@ -0,0 +1,35 @@
+package com.rest.s3.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// <hash>/<attachmentId>_<fileName>, where hash is a few hex digits of a mix of the id. Consecutive ids get
+// unrelated prefixes, so S3 can split the load over partitions instead of throttling one prefix.
+@Component
+@ConditionalOnProperty(name = "files.keys.layout", havingValue = "hashed", matchIfMissing = true)
+public class HashedKeyLayout implements KeyLayout {
+
+    private final int prefixLength;
+
+    public HashedKeyLayout(@Value("${files.keys.prefixLength:4}") int prefixLength) {
+        if (prefixLength < 1 || prefixLength > 16) {
+            throw new IllegalArgumentException("files.keys.prefixLength must be between 1 and 16.");
+        }
+        this.prefixLength = prefixLength;
+    }
+
+    @Override
+    public String objectKey(Long attachmentId, String fileName) {
+        String hash = String.format("%016x", mix(attachmentId));
+        return hash.substring(0, prefixLength) + "/" + LegacyKeyLayout.key(attachmentId, fileName);
+    }
+
+    // SplitMix64 finalizer: every bit of the id affects the high bits used for the prefix
+    static long mix(long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
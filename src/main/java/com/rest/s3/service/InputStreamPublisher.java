@@ -0,0 +1,81 @@
+package com.rest.s3.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+// Publishes a local stream, such as a spooled upload, one buffer per request on the requesting thread
+final class InputStreamPublisher implements Publisher<ByteBuffer> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+
+    InputStreamPublisher(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new Subscription() {
+
+            private long demand;
+            // Set while buffers are being delivered, so requests made from onNext only add demand
+            private boolean emitting;
+            private boolean done;
+
+            @Override
+            public synchronized void request(long n) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    finish();
+                    subscriber.onError(new IllegalArgumentException("Requested " + n + " buffers"));
+                    return;
+                }
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+                try {
+                    while (demand > 0 && !done) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int read = in.read(buffer);
+                        if (read < 0) {
+                            finish();
+                            subscriber.onComplete();
+                            return;
+                        }
+                        demand--;
+                        subscriber.onNext(ByteBuffer.wrap(buffer, 0, read));
+                    }
+                } catch (IOException e) {
+                    finish();
+                    subscriber.onError(e);
+                } finally {
+                    emitting = false;
+                }
+            }
+
+            @Override
+            public synchronized void cancel() {
+                finish();
+            }
+
+            private void finish() {
+                done = true;
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing left to release
+                }
+            }
+        });
+    }
+}
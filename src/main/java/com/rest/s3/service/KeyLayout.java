@@ -0,0 +1,8 @@
+package com.rest.s3.service;
+
+// Decides the S3 key of a newly uploaded file. The key is stored on the FileData row, so changing the
+// layout only affects new uploads; existing objects are moved by the KeyMigrator.
+public interface KeyLayout {
+
+    String objectKey(Long attachmentId, String fileName);
+}
@@ -0,0 +1,150 @@
+package com.rest.s3.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.rest.s3.cache.FileAccessCache;
+import com.rest.s3.model.FileData;
+import com.rest.s3.repository.FileRepo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Moves objects stored under the legacy <attachmentId>_<fileName> key to the configured KeyLayout, one
+// throttled batch per run: copy, record the new key on the row, and only later delete the old object.
+// The old copies are kept for deleteDelay so that downloads resolved from an access cached before the
+// move (on any node) still find their object; if the node stops first, the reconciler removes them.
+// Disabled by default; enable it on a single node.
+@Component
+public class KeyMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyMigrator.class);
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final FileRepo fileRepo;
+    private final FileService fileService;
+    private final KeyLayout keyLayout;
+    private final ThumbnailService thumbnailService;
+    private final FileDeletionService deletionService;
+    private final FileAccessCache fileAccessCache;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration deleteDelay;
+    // Last row id handled; 0 starts a new pass over the table
+    private long resumeAfter;
+    // Old keys of moved objects, waiting out deleteDelay, oldest first
+    private final Queue<Retired> retired = new ConcurrentLinkedQueue<>();
+
+    public KeyMigrator(S3Client s3Client, String bucketName, FileRepo fileRepo, FileService fileService, KeyLayout keyLayout,
+            ThumbnailService thumbnailService, FileDeletionService deletionService, FileAccessCache fileAccessCache,
+            MeterRegistry registry,
+            @Value("${files.keys.migration.enabled:false}") boolean enabled,
+            @Value("${files.keys.migration.batchSize:100}") int batchSize,
+            @Value("${files.keys.migration.deleteDelay:10m}") Duration deleteDelay) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.fileRepo = fileRepo;
+        this.fileService = fileService;
+        this.keyLayout = keyLayout;
+        this.thumbnailService = thumbnailService;
+        this.deletionService = deletionService;
+        this.fileAccessCache = fileAccessCache;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.deleteDelay = deleteDelay;
+    }
+
+    @Scheduled(fixedDelayString = "${files.keys.migration.interval:10s}", initialDelayString = "${files.keys.migration.interval:10s}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            deleteRetired(Instant.now());
+            migrateBatch();
+        } catch (RuntimeException e) {
+            log.warn("Key migration failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Returns the number of rows moved to the new layout
+    int migrateBatch() {
+        List<FileData> rows = fileRepo.findLegacyKeyedAfter(resumeAfter, PageRequest.of(0, batchSize));
+        if (rows.isEmpty()) {
+            // Pass finished; the next run looks again for rows that were still uploading
+            resumeAfter = 0;
+            return 0;
+        }
+        List<String> oldKeys = new ArrayList<>();
+        int migrated = 0;
+        for (FileData row : rows) {
+            resumeAfter = row.getId();
+            String oldKey = fileService.objectKey(row.getId(), row.getFileName());
+            String newKey = keyLayout.objectKey(row.getId(), row.getFileName());
+            boolean moved = !newKey.equals(oldKey);
+            try {
+                if (moved) {
+                    s3Client.copyObject(b -> b.sourceBucket(bucketName).sourceKey(oldKey)
+                            .destinationBucket(bucketName).destinationKey(newKey));
+                }
+                if (fileRepo.assignStorageKey(row.getId(), newKey) == 0) {
+                    // Deleted while it was being copied
+                    if (moved) {
+                        deletionService.deleteObjects(List.of(newKey));
+                    }
+                    continue;
+                }
+            } catch (S3Exception e) {
+                // Left as it is; a later pass tries again
+                log.warn("Could not move {} to {}: {}", oldKey, newKey, e.getMessage());
+                count("error");
+                continue;
+            }
+            fileAccessCache.invalidate(row.getId());
+            if (moved) {
+                oldKeys.add(oldKey);
+                // Thumbnails are rendered again under the new key when next requested
+                if (thumbnailService.hasVariants(row.getFileName(), row.getFileType())) {
+                    oldKeys.addAll(thumbnailService.derivedKeys(oldKey));
+                }
+            }
+            migrated++;
+            count("success");
+        }
+        if (!oldKeys.isEmpty()) {
+            retired.add(new Retired(oldKeys, Instant.now()));
+        }
+        log.info("Moved {} of {} objects to the {} key layout", migrated, rows.size(), keyLayout.getClass().getSimpleName());
+        return migrated;
+    }
+
+    void deleteRetired(Instant now) {
+        Retired next;
+        while ((next = retired.peek()) != null && next.retiredAt().plus(deleteDelay).isBefore(now)) {
+            retired.poll();
+            deletionService.deleteObjects(next.keys());
+        }
+    }
+
+    private void count(String outcome) {
+        registry.counter("files.keys.migrated", "outcome", outcome).increment();
+    }
+
+    private record Retired(List<String> keys, Instant retiredAt) {
+    }
+}
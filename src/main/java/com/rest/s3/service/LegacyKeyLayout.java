@@ -0,0 +1,20 @@
+package com.rest.s3.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// <attachmentId>_<fileName>, the layout of rows without a storageKey. Ids increase, so new keys share
+// a prefix and an ingest burst lands on a single S3 partition.
+@Component
+@ConditionalOnProperty(name = "files.keys.layout", havingValue = "legacy")
+public class LegacyKeyLayout implements KeyLayout {
+
+    static String key(Long attachmentId, String fileName) {
+        return attachmentId + "_" + fileName;
+    }
+
+    @Override
+    public String objectKey(Long attachmentId, String fileName) {
+        return key(attachmentId, fileName);
+    }
+}
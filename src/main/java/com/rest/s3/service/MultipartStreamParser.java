@@ -0,0 +1,244 @@
+package com.rest.s3.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Incremental multipart/form-data parser: parts are exposed one at a time as streams read straight
+// off the request body, so nothing is spooled to memory or disk beyond a fixed-size buffer
+public class MultipartStreamParser {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean finished;
+    private PartInputStream current;
+
+    public MultipartStreamParser(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        // Pretend the body starts with CRLF so the first boundary matches the same delimiter as the rest,
+        // and treat everything before it as a preamble part that is skipped
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        limit = 2;
+        current = new PartInputStream();
+    }
+
+    // Extract the boundary parameter from a multipart Content-Type header
+    public static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            throw new IllegalArgumentException("Request must be multipart/form-data.");
+        }
+        String boundary = parameters(contentType).get("boundary");
+        if (boundary == null || boundary.isEmpty()) {
+            throw new IllegalArgumentException("Multipart boundary is missing.");
+        }
+        return boundary;
+    }
+
+    // Advance to the next part, discarding whatever is left of the current one; null after the last part
+    public Part nextPart() throws IOException {
+        if (finished) {
+            return null;
+        }
+        current.skipToEnd();
+        if (!ensure(2)) {
+            throw new IOException("Unexpected end of multipart stream");
+        }
+        if (buffer[pos] == '-' && buffer[pos + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        Map<String, String> headers = readHeaders();
+        Map<String, String> disposition = parameters(headers.getOrDefault("content-disposition", ""));
+        String fileName = disposition.get("filename");
+        if (fileName != null) {
+            // Some clients send the full client-side path
+            fileName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+        }
+        current = new PartInputStream();
+        return new Part(disposition.get("name"), fileName, headers.get("content-type"), current);
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        // Consume the rest of the boundary line (transport padding + CRLF), then header lines up to a blank line
+        readLine();
+        Map<String, String> headers = new LinkedHashMap<>();
+        int total = 0;
+        String line;
+        while (!(line = readLine()).isEmpty()) {
+            total += line.length();
+            if (total > MAX_HEADER_SIZE) {
+                throw new IOException("Multipart headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            if (!ensure(1)) {
+                throw new IOException("Unexpected end of multipart stream");
+            }
+            byte b = buffer[pos++];
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_HEADER_SIZE) {
+                throw new IOException("Multipart header line too long");
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    // Make at least n bytes available in the buffer unless the stream ends first
+    private boolean ensure(int n) throws IOException {
+        if (limit - pos >= n) {
+            return true;
+        }
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        while (limit < n && !eof) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return limit - pos >= n;
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // Parse "value; key=value; key=\"quoted value\"" header parameters
+    static Map<String, String> parameters(String header) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        int i = header.indexOf(';');
+        while (i >= 0 && i < header.length()) {
+            int eq = header.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String key = header.substring(i + 1, eq).trim().toLowerCase(Locale.ROOT);
+            String value;
+            int next;
+            if (eq + 1 < header.length() && header.charAt(eq + 1) == '"') {
+                StringBuilder quoted = new StringBuilder();
+                int j = eq + 2;
+                while (j < header.length() && header.charAt(j) != '"') {
+                    if (header.charAt(j) == '\\' && j + 1 < header.length()) {
+                        j++;
+                    }
+                    quoted.append(header.charAt(j++));
+                }
+                value = quoted.toString();
+                next = header.indexOf(';', j);
+            } else {
+                next = header.indexOf(';', eq);
+                value = header.substring(eq + 1, next < 0 ? header.length() : next).trim();
+            }
+            parameters.put(key, value);
+            i = next;
+        }
+        return parameters;
+    }
+
+    public record Part(String name, String fileName, String contentType, InputStream body) {
+    }
+
+    // Body of a single part: returns bytes until the next delimiter
+    private final class PartInputStream extends InputStream {
+
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (ended || current != this) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                boolean more = ensure(delimiter.length);
+                int found = indexOfDelimiter();
+                int available;
+                if (found >= 0) {
+                    available = found - pos;
+                    if (available == 0) {
+                        pos += delimiter.length;
+                        ended = true;
+                        return -1;
+                    }
+                } else {
+                    // Keep a possible partial delimiter at the end of the buffer
+                    available = limit - pos - (delimiter.length - 1);
+                    if (!more) {
+                        throw new IOException("Unexpected end of multipart stream");
+                    }
+                }
+                if (available > 0) {
+                    int n = Math.min(len, available);
+                    System.arraycopy(buffer, pos, b, off, n);
+                    pos += n;
+                    return n;
+                }
+                if (!ensure(limit - pos + 1)) {
+                    throw new IOException("Unexpected end of multipart stream");
+                }
+            }
+        }
+
+        void skipToEnd() throws IOException {
+            byte[] skip = new byte[8192];
+            while (read(skip, 0, skip.length) >= 0) {
+                // discard
+            }
+        }
+    }
+}
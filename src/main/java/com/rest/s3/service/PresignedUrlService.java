@@ -0,0 +1,144 @@
+package com.rest.s3.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ContentDisposition;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.UserData;
+import com.rest.s3.repository.FileRepo;
+
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+// Direct transfer mode: the app only authorizes and signs, and clients move the bytes to and from S3 themselves.
+// Direct uploads land under direct/<userId>/ and get their FileData row when the client reports completion.
+@Service
+public class PresignedUrlService {
+
+    static final String DIRECT_PREFIX = "direct/";
+
+    private final S3Presigner s3Presigner;
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final FileService fileService;
+    private final FileRepo fileRepo;
+    private final Duration ttl;
+    private final long maxFileSize;
+
+    public PresignedUrlService(S3Presigner s3Presigner, S3Client s3Client, String bucketName, FileService fileService, FileRepo fileRepo,
+            @Value("${aws.s3.presign.ttl:15m}") Duration ttl,
+            @Value("${files.direct.maxFileSize:5GB}") DataSize maxFileSize) {
+        this.s3Presigner = s3Presigner;
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.fileService = fileService;
+        this.fileRepo = fileRepo;
+        this.ttl = ttl;
+        this.maxFileSize = maxFileSize.toBytes();
+    }
+
+    // Presigned GET for a file the user owns, with the same ownership check as a proxied download
+    public Map<String, Object> presignDownload(String filename, Long userId, Long attachmentId) {
+        String key = fileService.authorizeDownload(filename, userId, attachmentId);
+        String contentDisposition = ContentDisposition.attachment().filename(filename, StandardCharsets.UTF_8).build().toString();
+
+        PresignedGetObjectRequest presigned = s3Presigner.presignGetObject(b -> b.signatureDuration(ttl)
+                .getObjectRequest(r -> r.bucket(bucketName)
+                        .key(key)
+                        .responseContentType(fileService.getFileContentType(filename))
+                        .responseContentDisposition(contentDisposition)));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("method", "GET");
+        response.put("url", presigned.url().toString());
+        response.put("expiresAt", presigned.expiration());
+        return response;
+    }
+
+    // Presigned PUT for a new file. Content-Type (and Content-Length when size is given) are part of the
+    // signature, so S3 rejects uploads that do not match what was validated here.
+    public Map<String, Object> presignUpload(String fileName, String contentType, Long size, Long userId) {
+        fileService.validateFile(contentType, fileName);
+        if (fileName.isEmpty() || fileName.contains("/")) {
+            throw new IllegalArgumentException("File name is invalid");
+        }
+        if (size != null && (size < 0 || size > maxFileSize)) {
+            throw new IllegalArgumentException("File size must be between 0 and " + maxFileSize + " bytes.");
+        }
+        UserData user = fileService.findUploader(userId);
+
+        String key = DIRECT_PREFIX + user.getId() + "/" + UUID.randomUUID() + "_" + fileName;
+        PresignedPutObjectRequest presigned = s3Presigner.presignPutObject(b -> b.signatureDuration(ttl)
+                .putObjectRequest(r -> r.bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength(size)));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("method", "PUT");
+        response.put("url", presigned.url().toString());
+        response.put("key", key);
+        response.put("headers", presigned.signedHeaders());
+        response.put("expiresAt", presigned.expiration());
+        return response;
+    }
+
+    // Record a finished direct upload. Safe to call more than once for the same key, also concurrently.
+    public Map<String, Object> completeUpload(String key, Long userId) {
+        UserData user = fileService.findUploader(userId);
+        String userPrefix = DIRECT_PREFIX + user.getId() + "/";
+        int nameStart = key == null ? -1 : key.indexOf('_', userPrefix.length());
+        if (key == null || !key.startsWith(userPrefix) || key.indexOf('/', userPrefix.length()) >= 0 || nameStart < 0) {
+            throw new IllegalArgumentException("Invalid upload key for user " + userId + ": " + key);
+        }
+        String fileName = key.substring(nameStart + 1);
+
+        FileData fileData = fileRepo.findFirstByStorageKey(key).orElse(null);
+        if (fileData == null) {
+            HeadObjectResponse head = headObject(key);
+            if (head.contentLength() > maxFileSize) {
+                s3Client.deleteObject(b -> b.bucket(bucketName).key(key));
+                throw new IllegalArgumentException("File exceeds the maximum size of " + maxFileSize + " bytes.");
+            }
+            fileService.validateFile(head.contentType(), fileName);
+            try {
+                fileData = fileService.saveFileMetadata(user, fileName, head.contentType(), key);
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent completion of the same upload inserted the row first (unique index on direct keys)
+                fileData = fileRepo.findFirstByStorageKey(key).orElseThrow(() -> e);
+            }
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("message", "File uploaded successfully: " + fileName);
+        response.put("attachmentId", fileData.getId());
+        return response;
+    }
+
+    private HeadObjectResponse headObject(String key) {
+        try {
+            return s3Client.headObject(b -> b.bucket(bucketName).key(key));
+        } catch (NoSuchKeyException e) {
+            throw new IllegalArgumentException("No uploaded object found for key: " + key);
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new IllegalArgumentException("No uploaded object found for key: " + key);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.rest.s3.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.rest.s3.model.FileAccess;
+import com.rest.s3.model.UserData;
+import com.rest.s3.repository.FileRepo;
+import com.rest.s3.repository.UserRepo;
+
+// Removes files older than their owner's retentionDays, a bounded number of batches per run. Users are visited
+// in id order and a run stops where its budget ran out, so the next run picks up with the same user; every
+// deleted batch is final, so nothing is lost when a run is interrupted. Disabled by default; enable it on a single node.
+@Component
+public class RetentionSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(RetentionSweeper.class);
+
+    private final UserRepo userRepo;
+    private final FileRepo fileRepo;
+    private final FileDeletionService deletionService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int batchesPerRun;
+    // Users before this id are done for the current sweep
+    private long resumeAfterUser;
+
+    public RetentionSweeper(UserRepo userRepo, FileRepo fileRepo, FileDeletionService deletionService,
+            @Value("${files.retention.enabled:false}") boolean enabled,
+            @Value("${files.retention.batchSize:1000}") int batchSize,
+            @Value("${files.retention.batchesPerRun:10}") int batchesPerRun) {
+        this.userRepo = userRepo;
+        this.fileRepo = fileRepo;
+        this.deletionService = deletionService;
+        this.enabled = enabled;
+        this.batchSize = Math.min(FileDeletionService.MAX_KEYS_PER_REQUEST, Math.max(1, batchSize));
+        this.batchesPerRun = Math.max(1, batchesPerRun);
+    }
+
+    @Scheduled(fixedDelayString = "${files.retention.interval:1h}", initialDelayString = "${files.retention.interval:1h}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            sweep();
+        } catch (RuntimeException e) {
+            log.warn("Retention sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Returns the number of files deleted
+    int sweep() {
+        int batches = 0;
+        int deleted = 0;
+        while (batches < batchesPerRun) {
+            List<UserData> users = userRepo.findWithRetentionAfter(resumeAfterUser, PageRequest.of(0, 100));
+            if (users.isEmpty()) {
+                // Sweep finished; the next run starts over
+                resumeAfterUser = 0;
+                break;
+            }
+            for (UserData user : users) {
+                LocalDateTime before = LocalDateTime.now().minusDays(user.getRetentionDays());
+                List<FileAccess> expired;
+                do {
+                    if (batches == batchesPerRun) {
+                        logSweep(deleted);
+                        return deleted;
+                    }
+                    expired = fileRepo.findAccessByUserIdBefore(user.getId(), before, PageRequest.of(0, batchSize));
+                    deletionService.delete(expired, "retention");
+                    deleted += expired.size();
+                    batches++;
+                } while (expired.size() == batchSize);
+                resumeAfterUser = user.getId();
+            }
+        }
+        logSweep(deleted);
+        return deleted;
+    }
+
+    private void logSweep(int deleted) {
+        if (deleted > 0) {
+            log.info("Retention removed {} expired files", deleted);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.rest.s3.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.metrics.S3Metrics;
+
+import io.micrometer.core.instrument.LongTaskTimer;
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+// Uploads objects to S3, switching to a parallel multipart upload above the configured threshold
+@Component
+public class S3MultipartUploader {
+
+    private static final Logger log = LoggerFactory.getLogger(S3MultipartUploader.class);
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final long multipartThreshold;
+    private final int partSize;
+    private final int concurrency;
+    private final ExecutorService partExecutor;
+    private final S3Metrics s3Metrics;
+    private final Duration uploadAttemptTimeout;
+
+    public S3MultipartUploader(S3Client s3Client, S3Metrics s3Metrics,
+            @Value("${aws.s3.bucketName}") String bucketName,
+            @Value("${aws.s3.multipart.threshold:16MB}") DataSize multipartThreshold,
+            @Value("${aws.s3.multipart.partSize:8MB}") DataSize partSize,
+            @Value("${aws.s3.multipart.concurrency:4}") int concurrency,
+            @Value("${aws.s3.multipart.threads:16}") int threads,
+            @Value("${aws.s3.timeouts.uploadAttempt:0s}") Duration uploadAttemptTimeout) {
+        if (partSize.toBytes() < DataSize.ofMegabytes(5).toBytes()) {
+            throw new IllegalArgumentException("aws.s3.multipart.partSize must be at least 5MB.");
+        }
+        this.s3Client = s3Client;
+        this.s3Metrics = s3Metrics;
+        this.uploadAttemptTimeout = uploadAttemptTimeout;
+        this.bucketName = bucketName;
+        this.multipartThreshold = multipartThreshold.toBytes();
+        this.partSize = Math.toIntExact(partSize.toBytes());
+        this.concurrency = Math.max(1, concurrency);
+        this.partExecutor = Executors.newFixedThreadPool(Math.max(1, threads), new CustomizableThreadFactory("s3-part-upload-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partExecutor.shutdown();
+    }
+
+    // Upload a stream as a single put below the threshold and as a multipart upload above it.
+    // A negative size means unknown: the first part decides whether the object is small enough for a single put.
+    public void upload(String key, String contentType, InputStream inputStream, long size) throws IOException {
+        upload(key, contentType, null, inputStream, size);
+    }
+
+    // Same, storing the object with a Content-Encoding (null for none)
+    public void upload(String key, String contentType, String contentEncoding, InputStream inputStream, long size) throws IOException {
+        LongTaskTimer.Sample active = s3Metrics.startUpload();
+        try {
+            doUpload(key, contentType, contentEncoding, inputStream, size);
+        } finally {
+            active.stop();
+        }
+    }
+
+    private void doUpload(String key, String contentType, String contentEncoding, InputStream inputStream, long size) throws IOException {
+        if (size >= 0 && size < multipartThreshold) {
+            s3Client.putObject(putObjectRequest(key, contentType, contentEncoding), RequestBody.fromInputStream(inputStream, size));
+            return;
+        }
+        byte[] firstPart = null;
+        if (size < 0) {
+            firstPart = readPart(inputStream);
+            if (firstPart == null || firstPart.length < partSize) {
+                byte[] data = firstPart == null ? new byte[0] : firstPart;
+                s3Client.putObject(putObjectRequest(key, contentType, contentEncoding),
+                        RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data), data.length, contentType));
+                return;
+            }
+        }
+        uploadMultipart(key, contentType, contentEncoding, inputStream, firstPart);
+    }
+
+    private PutObjectRequest putObjectRequest(String key, String contentType, String contentEncoding) {
+        return PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentEncoding(contentEncoding)
+                .overrideConfiguration(this::uploadAttemptTimeout)
+                .build();
+    }
+
+    // Payload-carrying requests get their own attempt timeout instead of the client-wide one (0 keeps the client's)
+    private void uploadAttemptTimeout(AwsRequestOverrideConfiguration.Builder builder) {
+        if (!uploadAttemptTimeout.isZero() && !uploadAttemptTimeout.isNegative()) {
+            builder.apiCallAttemptTimeout(uploadAttemptTimeout);
+        }
+    }
+
+    private void uploadMultipart(String key, String contentType, String contentEncoding, InputStream inputStream, byte[] firstPart)
+            throws IOException {
+        String uploadId = s3Client.createMultipartUpload(b -> b.bucket(bucketName).key(key).contentType(contentType)
+                .contentEncoding(contentEncoding))
+                .uploadId();
+
+        // At most `concurrency` parts of this upload are buffered and in flight at any time
+        Semaphore inFlight = new Semaphore(concurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            byte[] part = firstPart != null ? firstPart : readPart(inputStream);
+            for (; failure.get() == null && part != null; part = readPart(inputStream)) {
+                inFlight.acquire();
+                int number = partNumber++;
+                byte[] data = part;
+                parts.add(CompletableFuture.supplyAsync(() -> {
+                            // Parts still queued when another part fails are not sent
+                            if (failure.get() != null) {
+                                throw new CancellationException("Upload of " + key + " failed");
+                            }
+                            return uploadPart(key, uploadId, number, data);
+                        }, partExecutor)
+                        .whenComplete((completed, e) -> {
+                            if (e != null) {
+                                failure.compareAndSet(null, e);
+                            }
+                            inFlight.release();
+                        }));
+            }
+
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (CompletableFuture<CompletedPart> future : parts) {
+                completedParts.add(future.join());
+            }
+            completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+
+            s3Client.completeMultipartUpload(b -> b.bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(completedParts)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId, parts, failure, e);
+            throw new InterruptedIOException("Interrupted while uploading " + key);
+        } catch (CompletionException e) {
+            abort(key, uploadId, parts, failure, e.getCause());
+            throw rethrow(e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abort(key, uploadId, parts, failure, e);
+            throw e;
+        }
+    }
+
+    // Read the next part from the stream, returning null at end of stream
+    private byte[] readPart(InputStream inputStream) throws IOException {
+        byte[] buffer = inputStream.readNBytes(partSize);
+        return buffer.length == 0 ? null : buffer;
+    }
+
+    // Upload a single part. Transient failures are retried by the client's retry policy (aws.s3.retry.*),
+    // which can replay the part since its body is re-readable.
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, byte[] data) {
+        UploadPartResponse response = s3Client.uploadPart(b -> b.bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength((long) data.length)
+                .overrideConfiguration(this::uploadAttemptTimeout),
+                RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data), data.length,
+                        "application/octet-stream"));
+        return CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build();
+    }
+
+    // Stop the queued parts and wait for those in flight before aborting the multipart upload: a part that
+    // completes after the abort would be stored and billed without belonging to any upload
+    private void abort(String key, String uploadId, List<CompletableFuture<CompletedPart>> parts,
+            AtomicReference<Throwable> failure, Throwable cause) {
+        failure.compareAndSet(null, cause);
+        CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).handle((result, e) -> null).join();
+        try {
+            s3Client.abortMultipartUpload(b -> b.bucket(bucketName).key(key).uploadId(uploadId));
+        } catch (RuntimeException e) {
+            log.warn("Failed to abort multipart upload {} for {}: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    private RuntimeException rethrow(Throwable cause) throws IOException {
+        if (cause instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new IllegalStateException(cause);
+    }
+}
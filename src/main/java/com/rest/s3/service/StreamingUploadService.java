@@ -0,0 +1,147 @@
+package com.rest.s3.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.UserData;
+
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Upload path that pipes the multipart request body straight into S3 without the servlet
+// container spooling it first; size and SHA-256 are computed while the bytes flow through
+@Service
+public class StreamingUploadService {
+
+    private final FileService fileService;
+    private final S3MultipartUploader s3Uploader;
+    private final BlobStore blobStore;
+    private final ContentCodec contentCodec;
+    private final long maxFileSize;
+
+    public StreamingUploadService(FileService fileService, S3MultipartUploader s3Uploader, BlobStore blobStore, ContentCodec contentCodec,
+            @Value("${files.stream.maxFileSize:5GB}") DataSize maxFileSize) {
+        this.fileService = fileService;
+        this.s3Uploader = s3Uploader;
+        this.blobStore = blobStore;
+        this.contentCodec = contentCodec;
+        this.maxFileSize = maxFileSize.toBytes();
+    }
+
+    public Map<String, Object> upload(InputStream body, String contentType, Long userId) throws IOException {
+        if (userId == null) {
+            throw new IllegalArgumentException("User ID is required.");
+        }
+        UserData user = fileService.findUploader(userId);
+
+        MultipartStreamParser parser = new MultipartStreamParser(body, MultipartStreamParser.boundaryOf(contentType));
+        MultipartStreamParser.Part part;
+        while ((part = parser.nextPart()) != null && part.fileName() == null) {
+            // form fields other than the file are ignored
+        }
+        if (part == null) {
+            throw new IllegalArgumentException("Request does not contain a file part.");
+        }
+
+        String fileName = part.fileName();
+        String fileType = part.contentType();
+        fileService.validateFile(fileType, fileName.isEmpty() ? null : fileName);
+
+        FileData fileData = fileService.saveFileMetadata(user, fileName, fileType);
+        // With dedup the digest is only known once the stream ends, so the bytes go to a fresh blob key first
+        String newFileName = blobStore.isEnabled()
+                ? BlobStore.newBlobKey()
+                : fileService.assignObjectKey(fileData);
+
+        MessageDigest sha256 = BlobStore.sha256();
+        SizeLimitedInputStream counted = new SizeLimitedInputStream(new DigestInputStream(part.body(), sha256), maxFileSize);
+        String digest;
+        // Set while the stored object belongs to neither a blob nor a committed row, and is removed if the upload fails.
+        // Once adopted, the blob reference is given back by discardUpload instead.
+        String uploadedKey = null;
+        try {
+            // Size and digest describe the uploaded bytes; compression applies after them. Blobs are shared
+            // between rows, so deduplicated content is stored as uploaded.
+            ContentCodec.Encoded encoded = blobStore.isEnabled()
+                    ? new ContentCodec.Encoded(counted, null, -1)
+                    : contentCodec.encode(counted, fileType, -1);
+            fileService.recordCodec(fileData, encoded.codec());
+            s3Uploader.upload(newFileName, fileType, encoded.codec(), encoded.stream(), encoded.size());
+            uploadedKey = newFileName;
+            digest = HexFormat.of().formatHex(sha256.digest());
+            if (blobStore.isEnabled()) {
+                BlobStore.StoredContent content = blobStore.adopt(newFileName, digest, counted.count);
+                uploadedKey = null;
+                fileService.attachContent(fileData, content);
+            }
+            fileService.commitUpload(fileData);
+        } catch (S3Exception e) {
+            discard(fileData, uploadedKey);
+            throw new IllegalArgumentException("Error occurred during file upload: " + e.awsErrorDetails().errorMessage());
+        } catch (IOException | RuntimeException e) {
+            discard(fileData, uploadedKey);
+            throw e;
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("message", "File uploaded successfully: " + fileName);
+        response.put("attachmentId", fileData.getId());
+        response.put("size", counted.count);
+        response.put("sha256", digest);
+        return response;
+    }
+
+    private void discard(FileData fileData, String uploadedKey) {
+        fileService.discardUpload(fileData);
+        if (uploadedKey != null) {
+            fileService.deleteUploadedObject(uploadedKey);
+        }
+    }
+
+    // Counts bytes and fails the upload once the configured maximum is exceeded
+    private static final class SizeLimitedInputStream extends FilterInputStream {
+
+        private final long maxSize;
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long maxSize) {
+            super(in);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(int n) {
+            count += n;
+            if (count > maxSize) {
+                throw new IllegalArgumentException("File size exceeds the maximum limit.");
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.rest.s3.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.rest.s3.model.FileAccess;
+
+import jakarta.annotation.PreDestroy;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+// Resized variants of JPG/PNG files, generated on first request and stored next to the original under
+// derived/<storageKey>/w<width>.<ext>; later requests are served like any other object (cache, then S3).
+// Decoding uses source subsampling so a large original is never fully decoded, and runs on a bounded pool.
+@Service
+public class ThumbnailService {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailService.class);
+
+    static final String DERIVED_PREFIX = "derived/";
+
+    private final FileService fileService;
+    private final S3MultipartUploader s3Uploader;
+    private final int[] widths;
+    private final long maxDecodedPixels;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor renderExecutor;
+    private final Map<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+
+    public ThumbnailService(FileService fileService, S3MultipartUploader s3Uploader,
+            @Value("${files.thumbnails.widths:64,128,256,512,1024}") int[] widths,
+            @Value("${files.thumbnails.maxDecodedPixels:40000000}") long maxDecodedPixels,
+            @Value("${files.thumbnails.jpegQuality:0.85}") float jpegQuality,
+            @Value("${files.thumbnails.threads:4}") int threads,
+            @Value("${files.thumbnails.queueSize:64}") int queueSize) {
+        this.fileService = fileService;
+        this.s3Uploader = s3Uploader;
+        this.widths = Arrays.stream(widths).filter(w -> w > 0).sorted().toArray();
+        if (this.widths.length == 0) {
+            throw new IllegalArgumentException("files.thumbnails.widths must contain at least one positive width.");
+        }
+        this.maxDecodedPixels = maxDecodedPixels;
+        this.jpegQuality = jpegQuality;
+        // Full queue means the node is saturated; callers are rejected instead of piling up
+        this.renderExecutor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), new CustomizableThreadFactory("thumbnail-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        // Keep ImageIO stream buffers in memory rather than in temp files
+        ImageIO.setUseCache(false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdown();
+    }
+
+    // Authorize like a normal download, then serve the stored variant or render it
+    public Thumbnail download(String filename, Long userId, Long attachmentId, int width, String format, DownloadOptions options)
+            throws IOException {
+        String sourceType = fileService.getFileContentType(filename);
+        if (!sourceType.equals("image/jpeg") && !sourceType.equals("image/png")) {
+            throw new IllegalArgumentException("Thumbnails are only available for JPG and PNG files.");
+        }
+        if (width < 1) {
+            throw new IllegalArgumentException("Width should be positive.");
+        }
+        String outputFormat = outputFormat(format, sourceType);
+        int targetWidth = snapWidth(width);
+
+        FileAccess access = fileService.authorize(filename, userId, attachmentId);
+        String contentType = "image/" + outputFormat;
+        String derivedName = baseName(filename) + "_w" + targetWidth + "." + extension(outputFormat);
+
+        // A write-behind upload still in this node's spool is rendered from there and not stored: variants are
+        // kept under the object key, which the upload only gets once it is flushed
+        FileDownload spooled = fileService.spooledDownload(access, DownloadOptions.NONE);
+        if (spooled != null) {
+            CompletableFuture<byte[]> rendered;
+            try {
+                rendered = CompletableFuture.supplyAsync(() -> render(() -> spooled, null, targetWidth, outputFormat, contentType),
+                        renderExecutor);
+            } catch (RejectedExecutionException e) {
+                spooled.discard();
+                throw e;
+            }
+            return new Thumbnail(thumbnail(await(rendered)), contentType, derivedName);
+        }
+
+        String key = fileService.storageKey(fileService.flushedAccess(access), filename);
+        String derivedKey = DERIVED_PREFIX + key + "/w" + targetWidth + "." + extension(outputFormat);
+
+        // Validators come from the original, so a client keeps its copy until the original changes, whether the
+        // variant is served stored or rendered again. The stored object's own ETag changes with every rendering.
+        FileDownload source = fileService.objectValidators(key);
+        String eTag = variantETag(source.getETag(), targetWidth, outputFormat);
+        FileDownload notModified = FileDownload.notModified(options, eTag, source.getLastModified());
+        if (notModified != null) {
+            return new Thumbnail(notModified, contentType, derivedName);
+        }
+
+        DownloadOptions unconditional = new DownloadOptions(options.range(), null, null, options.acceptsGzip());
+        FileDownload stored = fileService.downloadObject(derivedKey, unconditional, true);
+        if (stored != null) {
+            return new Thumbnail(stored.withValidators(eTag, source.getLastModified()), contentType, derivedName);
+        }
+
+        // Concurrent requests for the same variant share one rendering. Its entry is dropped once it completes;
+        // that is attached after computeIfAbsent has returned, as a rendering that completes at once would
+        // otherwise update the map from inside its own computation.
+        CompletableFuture<byte[]> rendered = rendering.computeIfAbsent(derivedKey,
+                k -> CompletableFuture.supplyAsync(() -> render(() -> fileService.downloadObject(key, DownloadOptions.NONE, false),
+                        derivedKey, targetWidth, outputFormat, contentType), renderExecutor));
+        rendered.whenComplete((bytes, e) -> rendering.remove(derivedKey, rendered));
+        return new Thumbnail(thumbnail(await(rendered)).withValidators(eTag, source.getLastModified()), contentType, derivedName);
+    }
+
+    private static FileDownload thumbnail(byte[] bytes) {
+        return new FileDownload(200, new ByteArrayInputStream(bytes), bytes.length, null, null, null);
+    }
+
+    // Weak, as a variant rendered again need not be byte-identical: "<original ETag>-w<width>.<ext>"
+    static String variantETag(String sourceETag, int width, String outputFormat) {
+        if (sourceETag == null) {
+            return null;
+        }
+        String opaque = sourceETag.startsWith("W/") ? sourceETag.substring(2) : sourceETag;
+        if (opaque.length() >= 2 && opaque.startsWith("\"") && opaque.endsWith("\"")) {
+            opaque = opaque.substring(1, opaque.length() - 1);
+        }
+        return "W/\"" + opaque + "-w" + width + "." + extension(outputFormat) + "\"";
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> rendered) throws IOException {
+        try {
+            return rendered.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    // Render a variant of original and store it under derivedKey, unless that is null
+    private byte[] render(Original original, String derivedKey, int targetWidth, String outputFormat, String contentType) {
+        try {
+            BufferedImage source = decode(original.open(), targetWidth);
+            byte[] bytes = encode(resize(source, targetWidth, outputFormat), outputFormat);
+            if (derivedKey == null) {
+                return bytes;
+            }
+            try {
+                s3Uploader.upload(derivedKey, contentType, new ByteArrayInputStream(bytes), bytes.length);
+            } catch (S3Exception | IOException e) {
+                // Still serve this response; the variant is rendered again on the next request
+                log.warn("Could not store thumbnail {}", derivedKey, e);
+            }
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Decode the original at the coarsest subsampling that still leaves at least twice the target width
+    private BufferedImage decode(FileDownload original, int targetWidth) throws IOException {
+        try (InputStream body = original.getBody(); ImageInputStream input = ImageIO.createImageInputStream(body)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("File is not a readable image.");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int sourceWidth = reader.getWidth(0);
+                int sourceHeight = reader.getHeight(0);
+                int subsampling = Math.max(1, sourceWidth / (targetWidth * 2));
+                long decodedPixels = (long) (sourceWidth / subsampling) * (sourceHeight / subsampling);
+                if (decodedPixels > maxDecodedPixels) {
+                    throw new IllegalArgumentException("Image is too large to create a thumbnail.");
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage source, int targetWidth, String outputFormat) {
+        int width = Math.min(targetWidth, source.getWidth());
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+        boolean alpha = outputFormat.equals("png");
+        BufferedImage resized = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (!alpha) {
+                // JPEG has no transparency; flatten onto white
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    private byte[] encode(BufferedImage image, String outputFormat) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(outputFormat).next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (outputFormat.equals("jpeg")) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // Requested widths are rounded up to a configured size so the number of stored variants stays bounded
+    int snapWidth(int width) {
+        for (int allowed : widths) {
+            if (allowed >= width) {
+                return allowed;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    private static String outputFormat(String format, String sourceType) {
+        if (format == null || format.isEmpty()) {
+            return sourceType.equals("image/png") ? "png" : "jpeg";
+        }
+        String normalized = format.toLowerCase(Locale.ROOT);
+        if (normalized.equals("jpg") || normalized.equals("jpeg")) {
+            return "jpeg";
+        }
+        if (normalized.equals("png")) {
+            return "png";
+        }
+        throw new IllegalArgumentException("Invalid thumbnail format. Only jpeg and png are allowed.");
+    }
+
+    // Whether a file can have stored variants: thumbnails are only made of JPG and PNG files
+    boolean hasVariants(String fileName, String fileType) {
+        String type = fileService.getFileContentType(fileName);
+        return type.equals("image/jpeg") || type.equals("image/png") || "image/jpeg".equals(fileType) || "image/png".equals(fileType);
+    }
+
+    // Every key a variant of the object can be stored under with the configured widths; variants of widths
+    // configured earlier are not covered and are left for the reconciler
+    List<String> derivedKeys(String key) {
+        List<String> keys = new ArrayList<>(widths.length * 2);
+        for (int width : widths) {
+            keys.add(DERIVED_PREFIX + key + "/w" + width + ".jpg");
+            keys.add(DERIVED_PREFIX + key + "/w" + width + ".png");
+        }
+        return keys;
+    }
+
+    private static String extension(String outputFormat) {
+        return outputFormat.equals("jpeg") ? "jpg" : "png";
+    }
+
+    private static String baseName(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot > 0 ? filename.substring(0, dot) : filename;
+    }
+
+    // Opens the original image, on the render thread
+    private interface Original {
+
+        FileDownload open() throws IOException;
+    }
+
+    public record Thumbnail(FileDownload download, String contentType, String fileName) {
+    }
+}
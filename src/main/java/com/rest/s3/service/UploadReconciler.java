@@ -0,0 +1,262 @@
+package com.rest.s3.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.rest.s3.cache.ObjectCache;
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.FileSummary;
+import com.rest.s3.model.UploadState;
+import com.rest.s3.repository.FileRepo;
+import com.rest.s3.repository.StoredBlobRepo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+// Background repair of rows and objects that got out of step, a bounded amount of work per run:
+//   - PENDING rows not updated for pendingGrace are committed if their object exists and removed otherwise.
+//     Nodes refresh the rows of their running uploads every files.uploads.heartbeat (see FileService), so
+//     keep the grace several heartbeats long; only rows of uploads whose node died go stale.
+//   - objects older than objectGrace that no row (or blob) refers to are deleted
+// The bucket is walked one ListObjectsV2 page at a time, resuming after the last key seen, and each page is
+// checked against the database with a few set lookups, so memory stays bounded by the page size.
+// Disabled and in dry-run mode by default; enable it on a single node.
+@Component
+public class UploadReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadReconciler.class);
+
+    private static final String DERIVED_PREFIX = ThumbnailService.DERIVED_PREFIX;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final FileRepo fileRepo;
+    private final StoredBlobRepo blobRepo;
+    private final FileService fileService;
+    private final ObjectCache objectCache;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final boolean dryRun;
+    private final int pageSize;
+    private final int pagesPerRun;
+    private final Duration pendingGrace;
+    private final Duration objectGrace;
+    // Last key checked by the object sweep; null starts a new sweep from the beginning of the bucket
+    private String resumeAfter;
+
+    public UploadReconciler(S3Client s3Client, String bucketName, FileRepo fileRepo, StoredBlobRepo blobRepo, FileService fileService,
+            ObjectCache objectCache, MeterRegistry registry,
+            @Value("${files.reconciler.enabled:false}") boolean enabled,
+            @Value("${files.reconciler.dryRun:true}") boolean dryRun,
+            @Value("${files.reconciler.pageSize:1000}") int pageSize,
+            @Value("${files.reconciler.pagesPerRun:10}") int pagesPerRun,
+            @Value("${files.reconciler.pendingGrace:1h}") Duration pendingGrace,
+            @Value("${files.reconciler.objectGrace:24h}") Duration objectGrace) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.fileRepo = fileRepo;
+        this.blobRepo = blobRepo;
+        this.fileService = fileService;
+        this.objectCache = objectCache;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.dryRun = dryRun;
+        // DeleteObjects takes at most 1000 keys, and a page is deleted in one call
+        this.pageSize = Math.min(1000, Math.max(1, pageSize));
+        this.pagesPerRun = Math.max(1, pagesPerRun);
+        this.pendingGrace = pendingGrace;
+        this.objectGrace = objectGrace;
+    }
+
+    @Scheduled(fixedDelayString = "${files.reconciler.interval:10m}", initialDelayString = "${files.reconciler.interval:10m}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reconcilePendingRows();
+            reconcileObjects();
+        } catch (RuntimeException e) {
+            log.warn("Upload reconciliation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Uploads that never finished: the request or its node died between saving the row and committing it
+    void reconcilePendingRows() {
+        LocalDateTime before = LocalDateTime.now().minus(pendingGrace);
+        long afterId = 0;
+        for (int page = 0; page < pagesPerRun; page++) {
+            List<FileData> rows = fileRepo.findByStateBefore(UploadState.PENDING, before, afterId, PageRequest.of(0, pageSize));
+            for (FileData row : rows) {
+                List<String> keys = fileService.pendingObjectKeys(row);
+                String key = keys.stream().filter(this::exists).findFirst().orElse(null);
+                if (key != null) {
+                    log.info("{}Committing pending file {} whose object {} exists", prefix(), row.getId(), key);
+                    if (!dryRun) {
+                        row.setStorageKey(key);
+                        fileService.commitUpload(row);
+                    }
+                    count("pending_committed");
+                } else {
+                    log.info("{}Removing pending file {} whose object {} was never stored", prefix(), row.getId(), keys.get(0));
+                    if (!dryRun) {
+                        fileService.discardUpload(row);
+                    }
+                    count("pending_removed");
+                }
+            }
+            if (rows.size() < pageSize) {
+                return;
+            }
+            afterId = rows.get(rows.size() - 1).getId();
+        }
+    }
+
+    // Objects without a row: failed uploads that were never cleaned up, or rows deleted without their object
+    void reconcileObjects() {
+        for (int page = 0; page < pagesPerRun; page++) {
+            String startAfter = resumeAfter;
+            ListObjectsV2Response listing = s3Client.listObjectsV2(b -> b.bucket(bucketName).maxKeys(pageSize).startAfter(startAfter));
+            List<S3Object> objects = listing.contents();
+            if (!objects.isEmpty()) {
+                reconcilePage(objects);
+            }
+            if (!Boolean.TRUE.equals(listing.isTruncated()) || objects.isEmpty()) {
+                // Sweep finished; the next run starts over
+                resumeAfter = null;
+                return;
+            }
+            resumeAfter = objects.get(objects.size() - 1).key();
+        }
+    }
+
+    private void reconcilePage(List<S3Object> objects) {
+        // Recent objects may belong to uploads that have not saved or committed their row yet
+        Instant cutoff = Instant.now().minus(objectGrace);
+        List<String> keys = new ArrayList<>();
+        for (S3Object object : objects) {
+            if (object.lastModified() == null || object.lastModified().isBefore(cutoff)) {
+                keys.add(object.key());
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        Set<String> referenced = referencedKeys(keys);
+        List<ObjectIdentifier> orphans = new ArrayList<>();
+        for (String key : keys) {
+            if (!referenced.contains(baseKey(key))) {
+                orphans.add(ObjectIdentifier.builder().key(key).build());
+            }
+        }
+        if (orphans.isEmpty()) {
+            return;
+        }
+        log.info("{}Deleting {} unreferenced objects, from {} to {}", prefix(), orphans.size(), orphans.get(0).key(),
+                orphans.get(orphans.size() - 1).key());
+        if (!dryRun) {
+            s3Client.deleteObjects(b -> b.bucket(bucketName).delete(d -> d.objects(orphans).quiet(true)));
+            orphans.forEach(orphan -> objectCache.invalidate(orphan.key()));
+        }
+        registry.counter("files.reconciler.repairs", "kind", "orphan_object", "mode", mode()).increment(orphans.size());
+    }
+
+    // The subset of base keys (see baseKey) that a blob or a FileData row refers to
+    private Set<String> referencedKeys(List<String> keys) {
+        Set<String> blobKeys = new HashSet<>();
+        Set<String> fileKeys = new HashSet<>();
+        Set<Long> legacyIds = new HashSet<>();
+        for (String key : keys) {
+            String base = baseKey(key);
+            if (base.startsWith(BlobStore.BLOB_PREFIX)) {
+                blobKeys.add(base);
+                continue;
+            }
+            fileKeys.add(base);
+            Long legacyId = legacyId(base);
+            if (legacyId != null) {
+                legacyIds.add(legacyId);
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        if (!blobKeys.isEmpty()) {
+            referenced.addAll(blobRepo.findStorageKeysIn(blobKeys));
+        }
+        if (!fileKeys.isEmpty()) {
+            referenced.addAll(fileRepo.findStorageKeysIn(fileKeys));
+        }
+        if (!legacyIds.isEmpty()) {
+            for (FileSummary file : fileRepo.findLegacySummariesByIdIn(legacyIds)) {
+                referenced.add(fileService.objectKey(file.id(), file.fileName()));
+            }
+        }
+        return referenced;
+    }
+
+    // Derived objects (thumbnails) live and die with the object they were made from
+    static String baseKey(String key) {
+        while (key.startsWith(DERIVED_PREFIX) && key.lastIndexOf('/') > DERIVED_PREFIX.length()) {
+            key = key.substring(DERIVED_PREFIX.length(), key.lastIndexOf('/'));
+        }
+        return key;
+    }
+
+    // Rows without a storageKey are stored under <attachmentId>_<fileName>
+    private static Long legacyId(String key) {
+        int separator = key.indexOf('_');
+        if (separator < 1 || separator > 18) {
+            return null;
+        }
+        for (int i = 0; i < separator; i++) {
+            if (!Character.isDigit(key.charAt(i))) {
+                return null;
+            }
+        }
+        return Long.valueOf(key.substring(0, separator));
+    }
+
+    private boolean exists(String key) {
+        try {
+            s3Client.headObject(b -> b.bucket(bucketName).key(key));
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private void count(String kind) {
+        registry.counter("files.reconciler.repairs", "kind", kind, "mode", mode()).increment();
+    }
+
+    private String mode() {
+        return dryRun ? "dry_run" : "applied";
+    }
+
+    private String prefix() {
+        return dryRun ? "[dry run] " : "";
+    }
+}
@@ -0,0 +1,218 @@
+package com.rest.s3.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+// Local durable copy of uploads accepted in write-behind mode. Each upload is written to <id>.part,
+// fsync'd, then atomically renamed to <id>.spool, so a .spool file is always complete; .part files
+// left by a crash were never acknowledged and are discarded on recovery.
+@Component
+public class UploadSpool {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadSpool.class);
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String SPOOL_SUFFIX = ".spool";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public UploadSpool(@Value("${files.writeBehind.dir:${java.io.tmpdir}/s3-upload-spool}") String directory,
+            @Value("${files.writeBehind.maxBytes:10GB}") DataSize maxBytes) {
+        this.directory = Path.of(directory);
+        this.maxBytes = maxBytes.toBytes();
+    }
+
+    // Reserve room for an upload; false means the spool is full and the caller should not spool it
+    public boolean tryReserve(long size) {
+        long used;
+        do {
+            used = usedBytes.get();
+            if (used + size > maxBytes) {
+                return false;
+            }
+        } while (!usedBytes.compareAndSet(used, used + size));
+        return true;
+    }
+
+    public void release(long size) {
+        usedBytes.addAndGet(-size);
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    // Durably store the content of an upload; once this returns the bytes survive a crash
+    public void write(Long id, MultipartFile file) throws IOException {
+        Files.createDirectories(directory);
+        Path part = directory.resolve(id + PART_SUFFIX);
+        try (InputStream in = file.getInputStream();
+                ReadableByteChannel source = Channels.newChannel(in);
+                FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (source.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+            out.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        Files.move(part, path(id), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    // The rename is only durable once the directory entry is flushed
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the file content itself is already on disk
+            log.debug("Could not fsync spool directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    // Serve a spooled upload, honouring a single byte range; null if it is not (or no longer) spooled here
+    public FileDownload open(Long id, DownloadOptions options) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path(id), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        // The open channel keeps the content readable even if the flusher deletes the file meanwhile
+        long length = channel.size();
+        if (!options.isPartial()) {
+            return new FileDownload(200, Channels.newInputStream(channel), length, null, null, null);
+        }
+        long[] range = FileDownload.parseRange(options.range(), length);
+        if (range == null) {
+            channel.close();
+            return new FileDownload(416, null, -1, "bytes */" + length, null, null);
+        }
+        channel.position(range[0]);
+        long count = range[1] - range[0] + 1;
+        return new FileDownload(206, new LimitedInputStream(Channels.newInputStream(channel), count), count,
+                "bytes " + range[0] + "-" + range[1] + "/" + length, null, null);
+    }
+
+    public boolean contains(Long id) {
+        return Files.exists(path(id));
+    }
+
+    public long size(Long id) throws IOException {
+        return Files.size(path(id));
+    }
+
+    public InputStream openStream(Long id) throws IOException {
+        return Files.newInputStream(path(id));
+    }
+
+    // Drop a flushed (or abandoned) upload and give its room back
+    public void delete(Long id) {
+        Path path = path(id);
+        try {
+            long size = Files.size(path);
+            if (Files.deleteIfExists(path)) {
+                release(size);
+            }
+        } catch (NoSuchFileException e) {
+            // already removed
+        } catch (IOException e) {
+            log.warn("Could not delete spooled upload {}: {}", path, e.getMessage());
+        }
+    }
+
+    // Ids of complete spooled uploads left by a previous run; partial writes are removed and
+    // the space used by the rest is accounted for
+    public List<Long> recover() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return ids;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.endsWith(PART_SUFFIX)) {
+                    Files.deleteIfExists(entry);
+                } else if (name.endsWith(SPOOL_SUFFIX)) {
+                    try {
+                        ids.add(Long.valueOf(name.substring(0, name.length() - SPOOL_SUFFIX.length())));
+                        usedBytes.addAndGet(Files.size(entry));
+                    } catch (NumberFormatException e) {
+                        log.warn("Ignoring unexpected file in upload spool: {}", entry);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private Path path(Long id) {
+        return directory.resolve(id + SPOOL_SUFFIX);
+    }
+
+    // Reads at most count bytes of the underlying stream
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long count) {
+            super(in);
+            this.remaining = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.rest.s3.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rest.s3.model.UserData;
+import com.rest.s3.model.UserImportResult;
+import com.rest.s3.repository.UserRepo;
+
+// Bulk version of UserService.saveUser: the same rules, applied to chunks of rows with two set-based
+// lookups and one batched write per chunk instead of three round trips per user
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private final UserRepo userRepo;
+    private final UserValidator userValidator;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxUsers;
+    private final int chunkSize;
+
+    public UserImportService(UserRepo userRepo, UserValidator userValidator, TransactionTemplate transactionTemplate,
+            @Value("${users.import.maxUsers:10000}") int maxUsers,
+            @Value("${users.import.chunkSize:500}") int chunkSize) {
+        this.userRepo = userRepo;
+        this.userValidator = userValidator;
+        this.transactionTemplate = transactionTemplate;
+        this.maxUsers = maxUsers;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public List<UserImportResult> importUsers(List<UserData> users) {
+        if (users == null || users.isEmpty()) {
+            throw new IllegalArgumentException("No users to import.");
+        }
+        if (users.size() > maxUsers) {
+            throw new IllegalArgumentException("An import can contain at most " + maxUsers + " users.");
+        }
+
+        UserImportResult[] results = new UserImportResult[users.size()];
+        for (int from = 0; from < users.size(); from += chunkSize) {
+            int to = Math.min(users.size(), from + chunkSize);
+            importChunk(users, from, to, results);
+        }
+        return List.of(results);
+    }
+
+    // Each chunk commits before the next one is looked up, so later rows see earlier rows exactly
+    // as they would with one saveUser call per row
+    private void importChunk(List<UserData> users, int from, int to, UserImportResult[] results) {
+        List<Integer> valid = new ArrayList<>();
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (int i = from; i < to; i++) {
+            UserData user = users.get(i);
+            if (user == null) {
+                results[i] = UserImportResult.rejected(null, "User entry is empty.");
+                continue;
+            }
+            try {
+                userValidator.validate(user);
+                valid.add(i);
+                usernames.add(lower(user.getUsername()));
+                emails.add(lower(user.getEmail()));
+            } catch (IllegalArgumentException e) {
+                results[i] = UserImportResult.rejected(user.getUsername(), e.getMessage());
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> applyChunk(users, valid, usernames, emails, results));
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent writer took one of the usernames or emails; the whole chunk was rolled back
+            log.warn("User import chunk [{}, {}) rolled back", from, to, e);
+            for (int i : valid) {
+                results[i] = UserImportResult.failed(users.get(i).getUsername(),
+                        "Conflicting concurrent change to a username or email. Please retry.");
+            }
+        }
+    }
+
+    private void applyChunk(List<UserData> users, List<Integer> valid, Set<String> usernames, Set<String> emails,
+            UserImportResult[] results) {
+        Map<String, UserData> byUsername = new HashMap<>();
+        Map<String, UserData> byEmail = new HashMap<>();
+        for (UserData existing : userRepo.findAllByLowerUsernameIn(usernames)) {
+            index(existing, byUsername, byEmail);
+        }
+        for (UserData existing : userRepo.findAllByLowerEmailIn(emails)) {
+            // Managed entities are unique per id, so a user found by both queries is the same instance
+            index(existing, byUsername, byEmail);
+        }
+
+        Map<Integer, UserData> created = new LinkedHashMap<>();
+        Map<Integer, UserData> updated = new LinkedHashMap<>();
+        for (int i : valid) {
+            UserData user = users.get(i);
+            String username = lower(user.getUsername());
+            String email = lower(user.getEmail());
+
+            UserData userWithSameEmail = byEmail.get(email);
+            if (userWithSameEmail != null && !lower(userWithSameEmail.getUsername()).equals(username)) {
+                results[i] = UserImportResult.rejected(user.getUsername(),
+                        "This email is already associated with another user. Please change your email ID.");
+                continue;
+            }
+
+            UserData existingUser = byUsername.get(username);
+            if (existingUser != null) {
+                if (lower(existingUser.getEmail()).equals(email)) {
+                    results[i] = UserImportResult.rejected(user.getUsername(),
+                            "Username already has this email ID. Please update the email.");
+                    continue;
+                }
+                byEmail.remove(lower(existingUser.getEmail()));
+                existingUser.setEmail(user.getEmail());
+                byEmail.put(email, existingUser);
+                updated.put(i, existingUser);
+                continue;
+            }
+
+            UserData newUser = new UserData();
+            newUser.setUsername(user.getUsername());
+            newUser.setEmail(user.getEmail());
+            index(newUser, byUsername, byEmail);
+            created.put(i, newUser);
+        }
+
+        // New rows take ids from the pooled sequence, so this is one batched insert; updates are flushed on commit
+        userRepo.saveAll(created.values());
+        created.forEach((i, user) -> results[i] = UserImportResult.created(user));
+        updated.forEach((i, user) -> results[i] = UserImportResult.updated(user));
+    }
+
+    private static void index(UserData user, Map<String, UserData> byUsername, Map<String, UserData> byEmail) {
+        byUsername.put(lower(user.getUsername()), user);
+        byEmail.put(lower(user.getEmail()), user);
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
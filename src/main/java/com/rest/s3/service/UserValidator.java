@@ -0,0 +1,122 @@
+package com.rest.s3.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import com.rest.s3.model.UserData;
+
+// Single-pass user validation without regexes or intermediate strings. Messages and the order
+// in which they are reported are the same as the original per-rule checks.
+@Component
+public class UserValidator {
+
+    static final int MAX_EMAIL_LENGTH = 254;
+
+    public void validate(UserData user) {
+        String username = user.getUsername();
+        String email = user.getEmail();
+
+        if (!StringUtils.hasText(username)) {
+            throw new IllegalArgumentException("Username cannot be empty");
+        }
+
+        if (!StringUtils.hasText(email)) {
+            throw new IllegalArgumentException("Email cannot be empty");
+        }
+
+        if (username.length() < 3 || username.length() > 20) {
+            throw new IllegalArgumentException("Username must be between 3 and 20 characters.");
+        }
+
+        // A well-formed address cannot contain whitespace, a second '@', a dotless domain or a leading digit,
+        // so those rules never fire after this one
+        if (!isValidEmailFormat(email)) {
+            throw new IllegalArgumentException("Invalid email format.");
+        }
+
+        if (email.length() > MAX_EMAIL_LENGTH) {
+            throw new IllegalArgumentException("Email is too long. Maximum length is 254 characters.");
+        }
+
+        validateUsernameCharacters(username);
+    }
+
+    // Equivalent to ^[A-Za-z][A-Za-z0-9._%+-]*@[A-Za-z0-9.-]+\.[A-Za-z]{2,}$
+    static boolean isValidEmailFormat(String email) {
+        int length = email.length();
+        if (length == 0 || !isAsciiLetter(email.charAt(0))) {
+            return false;
+        }
+
+        int i = 1;
+        while (i < length && email.charAt(i) != '@') {
+            if (!isLocalPartChar(email.charAt(i))) {
+                return false;
+            }
+            i++;
+        }
+        if (i == length) {
+            return false;
+        }
+
+        // Domain: label characters, and a last dot that has at least one character before it
+        // and two or more letters after it
+        int domainStart = i + 1;
+        int lastDot = -1;
+        for (int j = domainStart; j < length; j++) {
+            char c = email.charAt(j);
+            if (c == '.') {
+                lastDot = j;
+            } else if (!isAsciiLetterOrDigit(c) && c != '-') {
+                return false;
+            }
+        }
+        if (lastDot <= domainStart || length - lastDot - 1 < 2) {
+            return false;
+        }
+        for (int j = lastDot + 1; j < length; j++) {
+            if (!isAsciiLetter(email.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Spaces are reported before other special characters, then the leading letter is checked
+    private static void validateUsernameCharacters(String username) {
+        boolean space = false;
+        boolean special = false;
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (c == ' ') {
+                space = true;
+            } else if (!isAsciiLetterOrDigit(c)) {
+                special = true;
+            }
+        }
+
+        if (space) {
+            throw new IllegalArgumentException("Username cannot contain spaces.");
+        }
+
+        if (special) {
+            throw new IllegalArgumentException("Username cannot contain special characters.");
+        }
+
+        if (!isAsciiLetter(username.charAt(0))) {
+            throw new IllegalArgumentException("Username must start with a letter.");
+        }
+    }
+
+    private static boolean isLocalPartChar(char c) {
+        return isAsciiLetterOrDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,261 @@
+package com.rest.s3.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.UploadState;
+import com.rest.s3.model.UserData;
+import com.rest.s3.repository.FileRepo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+// Write-behind uploads: the row is saved as PENDING, the file made durable in the local spool, and only then
+// is the row marked SPOOLED and the request acknowledged, so a SPOOLED row always has a complete spool file.
+// A crash before that leaves a PENDING row, which the reconciler removes, and a spool file that recovery
+// discards. A scheduled flusher copies spooled files to S3 on its own pool and marks the rows COMMITTED;
+// whatever a crash leaves in the spool is picked up again on the next start.
+@Service
+public class WriteBehindUploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindUploadService.class);
+
+    private final FileService fileService;
+    private final FileRepo fileRepo;
+    private final UploadSpool spool;
+    private final boolean enabled;
+    private final int batchSize;
+    private final ExecutorService flushExecutor;
+    // Ids of spooled uploads waiting for the flusher, oldest first
+    private final Queue<Long> pending = new ConcurrentLinkedQueue<>();
+    // Uploads handed to flushExecutor and not finished yet
+    private final AtomicInteger flushing = new AtomicInteger();
+    private final Counter flushed;
+    private final Counter flushFailures;
+
+    public WriteBehindUploadService(FileService fileService, FileRepo fileRepo, UploadSpool spool, MeterRegistry registry,
+            @Value("${files.writeBehind.enabled:false}") boolean enabled,
+            @Value("${files.writeBehind.batchSize:32}") int batchSize,
+            @Value("${files.writeBehind.concurrency:4}") int concurrency) {
+        this.fileService = fileService;
+        this.fileRepo = fileRepo;
+        this.spool = spool;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency), new CustomizableThreadFactory("s3-spool-flush-"));
+        Gauge.builder("files.spool.pending", pending, Queue::size).register(registry);
+        Gauge.builder("files.spool.size", spool, UploadSpool::getUsedBytes).baseUnit("bytes").register(registry);
+        this.flushed = Counter.builder("files.spool.flushes").tag("outcome", "success").register(registry);
+        this.flushFailures = Counter.builder("files.spool.flushes").tag("outcome", "error").register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Spool the upload and acknowledge it. When the spool is full the upload goes straight to S3 instead,
+    // so a long S3 outage slows clients down rather than filling the disk.
+    public String uploadFile(MultipartFile file, Long userId) throws IOException {
+        UserData user = fileService.validateUpload(file, userId);
+        if (!spool.tryReserve(file.getSize())) {
+            return fileService.uploadFile(file, userId);
+        }
+
+        FileData fileData = fileService.newFileData(user, file.getOriginalFilename(), file.getContentType());
+        boolean written = false;
+        try {
+            fileRepo.save(fileData);
+            fileService.uploadStarted(fileData);
+            spool.write(fileData.getId(), file);
+            written = true;
+            fileData.setState(UploadState.SPOOLED);
+            fileRepo.save(fileData);
+        } catch (IOException | RuntimeException e) {
+            if (written) {
+                spool.delete(fileData.getId());
+            } else {
+                spool.release(file.getSize());
+            }
+            if (fileData.getId() != null) {
+                fileRepo.deleteById(fileData.getId());
+            }
+            throw e;
+        } finally {
+            if (fileData.getId() != null) {
+                fileService.uploadEnded(fileData.getId());
+            }
+        }
+        pending.add(fileData.getId());
+        return "File uploaded successfully: " + fileData.getFileName();
+    }
+
+    // Requeue uploads spooled by a previous run. Rows that are gone or already committed only need the file removed,
+    // as do PENDING ones: the upload was never acknowledged
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() throws IOException {
+        List<Long> ids = spool.recover();
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Long, FileData> rows = fileRepo.findAllById(ids).stream()
+                .collect(Collectors.toMap(FileData::getId, Function.identity()));
+        int requeued = 0;
+        for (Long id : ids) {
+            FileData row = rows.get(id);
+            if (row != null && row.getState() == UploadState.SPOOLED) {
+                pending.add(id);
+                requeued++;
+            } else {
+                spool.delete(id);
+            }
+        }
+        log.info("Recovered {} spooled uploads ({} already flushed or removed)", requeued, ids.size() - requeued);
+    }
+
+    // Hand spooled uploads to the flush pool, keeping at most batchSize in flight, without waiting for them:
+    // the scheduler thread is shared with the other scheduled jobs. Failures go back to the end of the queue
+    // and are retried on a later run; the spool keeps them durable until then.
+    @Scheduled(fixedDelayString = "${files.writeBehind.flushInterval:1s}")
+    public void flush() {
+        int room = batchSize - flushing.get();
+        List<Long> batch = new ArrayList<>(Math.max(0, room));
+        Long id;
+        while (batch.size() < room && (id = pending.poll()) != null) {
+            batch.add(id);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<Long, FileData> rows = fileRepo.findAllById(batch).stream()
+                .collect(Collectors.toMap(FileData::getId, Function.identity()));
+        for (Long spooledId : batch) {
+            FileData fileData = rows.get(spooledId);
+            if (fileData == null || fileData.getState() != UploadState.SPOOLED) {
+                spool.delete(spooledId);
+                continue;
+            }
+            flushing.incrementAndGet();
+            try {
+                flushExecutor.execute(() -> flushOne(fileData));
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the spool file is recovered on the next start
+                flushing.decrementAndGet();
+            }
+        }
+    }
+
+    private void flushOne(FileData fileData) {
+        Long id = fileData.getId();
+        try {
+            fileService.storeObject(new SpooledFile(spool, fileData), fileData);
+            fileService.commitUpload(fileData);
+            spool.delete(id);
+            flushed.increment();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Flushing spooled upload {} to S3 failed; will retry: {}", id, e.getMessage());
+            flushFailures.increment();
+            pending.add(id);
+        } finally {
+            flushing.decrementAndGet();
+        }
+    }
+
+    // Spooled content presented as the multipart file FileService stores
+    private static final class SpooledFile implements MultipartFile {
+
+        private final UploadSpool spool;
+        private final FileData fileData;
+
+        SpooledFile(UploadSpool spool, FileData fileData) {
+            this.spool = spool;
+            this.fileData = fileData;
+        }
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return fileData.getFileName();
+        }
+
+        @Override
+        public String getContentType() {
+            return fileData.getFileType();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return getSize() == 0;
+        }
+
+        @Override
+        public long getSize() {
+            try {
+                return spool.size(fileData.getId());
+            } catch (IOException e) {
+                throw new IllegalStateException("Spooled upload " + fileData.getId() + " is unreadable", e);
+            }
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            try (InputStream in = getInputStream()) {
+                return in.readAllBytes();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return spool.openStream(fileData.getId());
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            transferTo(dest.toPath());
+        }
+
+        @Override
+        public void transferTo(Path dest) throws IOException {
+            try (InputStream in = getInputStream()) {
+                Files.copy(in, dest, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
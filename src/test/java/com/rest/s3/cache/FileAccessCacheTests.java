@@ -0,0 +1,50 @@
+package com.rest.s3.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.rest.s3.model.FileAccess;
+import com.rest.s3.model.UploadState;
+
+class FileAccessCacheTests {
+
+	private final FileAccessCache cache = new FileAccessCache(100, Duration.ofMinutes(5));
+	private final AtomicInteger loads = new AtomicInteger();
+
+	private FileAccess access(String storageKey) {
+		loads.incrementAndGet();
+		return new FileAccess(1L, 1L, "a.png", "image/png", storageKey, null, UploadState.COMMITTED);
+	}
+
+	@Test
+	void cachesLoadedAccess() {
+		assertThat(cache.get(1L, id -> access("old")).storageKey()).isEqualTo("old");
+		assertThat(cache.get(1L, id -> access("new")).storageKey()).isEqualTo("old");
+		assertThat(loads).hasValue(1);
+	}
+
+	@Test
+	void loadRacingAnInvalidateIsNotCached() {
+		// The row changes and is invalidated while the lookup that read it is still running
+		FileAccess stale = cache.get(1L, id -> {
+			FileAccess loaded = access("old");
+			cache.invalidate(1L);
+			return loaded;
+		});
+
+		assertThat(stale.storageKey()).isEqualTo("old");
+		assertThat(cache.get(1L, id -> access("new")).storageKey()).isEqualTo("new");
+		assertThat(cache.get(1L, id -> access("newer")).storageKey()).isEqualTo("new");
+	}
+
+	@Test
+	void missingRowsAreNotCached() {
+		assertThat(cache.get(1L, id -> null)).isNull();
+		assertThat(cache.get(1L, id -> access("key")).storageKey()).isEqualTo("key");
+		assertThat(cache.size()).isEqualTo(1);
+	}
+}
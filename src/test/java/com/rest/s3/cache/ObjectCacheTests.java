@@ -0,0 +1,116 @@
+package com.rest.s3.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+class ObjectCacheTests {
+
+	@TempDir
+	Path cacheDir;
+
+	private ObjectCache newCache(DataSize memoryMaxSize) throws IOException {
+		return new ObjectCache(true, memoryMaxSize, DataSize.ofKilobytes(4), DataSize.ofMegabytes(1),
+				DataSize.ofKilobytes(64), cacheDir, Duration.ofMinutes(1));
+	}
+
+	private void readThrough(ObjectCache cache, String key, byte[] data) throws IOException {
+		try (InputStream in = cache.capture(key, new ByteArrayInputStream(data), data.length, "\"etag\"", Instant.now())) {
+			in.readAllBytes();
+		}
+	}
+
+	@Test
+	void fullyReadObjectIsCachedInMemory() throws IOException {
+		ObjectCache cache = newCache(DataSize.ofKilobytes(64));
+		byte[] data = "hello".getBytes();
+
+		assertThat(cache.get("1_a.png")).isNull();
+		readThrough(cache, "1_a.png", data);
+
+		CachedObject cached = cache.get("1_a.png");
+		assertThat(cached).isNotNull();
+		assertThat(cached.openStream(1, 3).readAllBytes()).isEqualTo("ell".getBytes());
+		assertThat(cache.getMemoryHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	void partiallyReadObjectIsNotCached() throws IOException {
+		ObjectCache cache = newCache(DataSize.ofKilobytes(64));
+		try (InputStream in = cache.capture("1_a.png", new ByteArrayInputStream(new byte[100]), 100, "\"etag\"", Instant.now())) {
+			in.readNBytes(10);
+		}
+		assertThat(cache.get("1_a.png")).isNull();
+	}
+
+	@Test
+	void largeObjectGoesToDiskTier() throws IOException {
+		ObjectCache cache = newCache(DataSize.ofKilobytes(64));
+		byte[] data = new byte[32 * 1024];
+		data[data.length - 1] = 7;
+		readThrough(cache, "2_b.docx", data);
+
+		CachedObject cached = cache.get("2_b.docx");
+		assertThat(cached.openStream(0, data.length).readAllBytes()).isEqualTo(data);
+		assertThat(cache.getDiskHits()).isEqualTo(1);
+		assertThat(cache.getDiskSize()).isEqualTo(data.length);
+	}
+
+	@Test
+	void diskEntryDeletedAfterLookupOpensAsMissingFile() throws IOException {
+		ObjectCache cache = newCache(DataSize.ofKilobytes(64));
+		readThrough(cache, "2_b.docx", new byte[32 * 1024]);
+
+		CachedObject cached = cache.get("2_b.docx");
+		cache.invalidate("2_b.docx");
+
+		// FileService treats this as a miss and reads the object from S3
+		assertThatThrownBy(() -> cached.openStream(0, 10)).isInstanceOf(NoSuchFileException.class);
+	}
+
+	@Test
+	void startupDeletesOnlyCacheFiles() throws IOException {
+		Files.writeString(cacheDir.resolve("left.obj"), "entry");
+		Files.writeString(cacheDir.resolve("partial.tmp"), "capture");
+		Files.writeString(cacheDir.resolve("notes.txt"), "not ours");
+
+		newCache(DataSize.ofKilobytes(64));
+
+		assertThat(cacheDir.resolve("left.obj")).doesNotExist();
+		assertThat(cacheDir.resolve("partial.tmp")).doesNotExist();
+		assertThat(cacheDir.resolve("notes.txt")).exists();
+	}
+
+	@Test
+	void invalidateRemovesEntry() throws IOException {
+		ObjectCache cache = newCache(DataSize.ofKilobytes(64));
+		readThrough(cache, "3_c.jpg", new byte[10]);
+		cache.invalidate("3_c.jpg");
+		assertThat(cache.get("3_c.jpg")).isNull();
+	}
+
+	@Test
+	void memoryEvictionsSpillToDisk() throws IOException {
+		ObjectCache cache = newCache(DataSize.ofKilobytes(8));
+		for (int i = 0; i < 10; i++) {
+			readThrough(cache, i + "_x.png", new byte[2048]);
+		}
+		assertThat(cache.getMemorySize()).isLessThanOrEqualTo(8 * 1024);
+		for (int i = 0; i < 10; i++) {
+			assertThat(cache.get(i + "_x.png")).isNotNull();
+		}
+	}
+}
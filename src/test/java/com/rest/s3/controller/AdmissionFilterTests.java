@@ -0,0 +1,74 @@
+package com.rest.s3.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import jakarta.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.service.AdmissionControl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionFilterTests {
+
+	// One upload per user, then a long wait for the next token
+	private final AdmissionFilter filter = new AdmissionFilter(new AdmissionControl(new SimpleMeterRegistry(), true,
+			0.01, 1, 4, 0.01, 1, 4, DataSize.ofGigabytes(1), DataSize.ofMegabytes(1)));
+
+	private static MockHttpServletRequest upload(String queryString, String remoteAddr) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/files/upload");
+		request.setQueryString(queryString);
+		request.setRemoteAddr(remoteAddr);
+		request.setContentType("multipart/form-data; boundary=x");
+		return request;
+	}
+
+	private MockHttpServletResponse send(MockHttpServletRequest request) throws ServletException, IOException {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response;
+	}
+
+	@Test
+	void limitsUsersNamedInTheQueryString() throws ServletException, IOException {
+		assertThat(send(upload("userId=1", "10.0.0.1")).getStatus()).isEqualTo(200);
+		assertThat(send(upload("userId=2", "10.0.0.1")).getStatus()).isEqualTo(200);
+
+		MockHttpServletResponse limited = send(upload("userId=1", "10.0.0.2"));
+		assertThat(limited.getStatus()).isEqualTo(429);
+		assertThat(limited.getHeader(HttpHeaders.RETRY_AFTER)).isNotNull();
+	}
+
+	@Test
+	void fallsBackToTheClientAddressWithoutAQueryUserId() throws ServletException, IOException {
+		MockHttpServletRequest formField = upload(null, "10.0.0.1");
+		formField.addParameter("userId", "1");
+		assertThat(AdmissionFilter.user(formField)).isEqualTo("ip:10.0.0.1");
+
+		assertThat(send(formField).getStatus()).isEqualTo(200);
+		// Another user behind the same address shares its limits
+		MockHttpServletRequest sameAddress = upload(null, "10.0.0.1");
+		sameAddress.addParameter("userId", "2");
+		assertThat(send(sameAddress).getStatus()).isEqualTo(429);
+		assertThat(send(upload(null, "10.0.0.2")).getStatus()).isEqualTo(200);
+	}
+
+	@Test
+	void isOffUnlessEnabled() throws ServletException, IOException {
+		AdmissionFilter disabled = new AdmissionFilter(new AdmissionControl(new SimpleMeterRegistry(), false,
+				0.01, 1, 4, 0.01, 1, 4, DataSize.ofGigabytes(1), DataSize.ofMegabytes(1)));
+		for (int i = 0; i < 3; i++) {
+			MockHttpServletResponse response = new MockHttpServletResponse();
+			disabled.doFilter(upload("userId=1", "10.0.0.1"), response, new MockFilterChain());
+			assertThat(response.getStatus()).isEqualTo(200);
+		}
+	}
+}
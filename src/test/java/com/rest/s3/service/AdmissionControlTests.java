@@ -0,0 +1,76 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.service.AdmissionControl.Admission;
+import com.rest.s3.service.AdmissionControl.Transfer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdmissionControlTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private AdmissionControl newControl(double rate, int burst, int maxConcurrent, DataSize maxInFlightBytes) {
+		return new AdmissionControl(registry, true, rate, burst, maxConcurrent, rate, burst, maxConcurrent,
+				maxInFlightBytes, DataSize.ofMegabytes(64));
+	}
+
+	@Test
+	void capsConcurrentTransfersPerUser() {
+		AdmissionControl control = newControl(100, 100, 2, DataSize.ofGigabytes(1));
+
+		Admission first = control.tryAdmit(Transfer.DOWNLOAD, "user:1", -1);
+		Admission second = control.tryAdmit(Transfer.DOWNLOAD, "user:1", -1);
+		Admission third = control.tryAdmit(Transfer.DOWNLOAD, "user:1", -1);
+
+		assertThat(first.admitted()).isTrue();
+		assertThat(second.admitted()).isTrue();
+		assertThat(third.admitted()).isFalse();
+		assertThat(third.reason()).isEqualTo("concurrency");
+		// Other users and the other direction are unaffected
+		assertThat(control.tryAdmit(Transfer.DOWNLOAD, "user:2", -1).admitted()).isTrue();
+		assertThat(control.tryAdmit(Transfer.UPLOAD, "user:1", 10).admitted()).isTrue();
+
+		first.permit().close();
+		first.permit().close();
+		assertThat(control.tryAdmit(Transfer.DOWNLOAD, "user:1", -1).admitted()).isTrue();
+		assertThat(control.tryAdmit(Transfer.DOWNLOAD, "user:1", -1).admitted()).isFalse();
+	}
+
+	@Test
+	void rateLimitsAfterTheBurstWithARetryHint() {
+		AdmissionControl control = newControl(0.5, 3, 100, DataSize.ofGigabytes(1));
+
+		for (int i = 0; i < 3; i++) {
+			control.tryAdmit(Transfer.UPLOAD, "user:1", 10).permit().close();
+		}
+		Admission limited = control.tryAdmit(Transfer.UPLOAD, "user:1", 10);
+
+		assertThat(limited.admitted()).isFalse();
+		assertThat(limited.reason()).isEqualTo("rate");
+		assertThat(limited.retryAfterSeconds()).isBetween(1L, 2L);
+		assertThat(registry.get("files.admission.requests").tag("outcome", "rejected_rate").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void limitsUploadBytesInFlightAcrossUsers() {
+		AdmissionControl control = newControl(100, 100, 100, DataSize.ofMegabytes(10));
+
+		Admission large = control.tryAdmit(Transfer.UPLOAD, "user:1", DataSize.ofMegabytes(8).toBytes());
+		Admission tooMuch = control.tryAdmit(Transfer.UPLOAD, "user:2", DataSize.ofMegabytes(4).toBytes());
+		Admission unknownLength = control.tryAdmit(Transfer.UPLOAD, "user:3", -1);
+
+		assertThat(large.admitted()).isTrue();
+		assertThat(tooMuch.reason()).isEqualTo("bytes");
+		assertThat(unknownLength.reason()).isEqualTo("bytes");
+		// Downloads carry no request body
+		assertThat(control.tryAdmit(Transfer.DOWNLOAD, "user:2", -1).admitted()).isTrue();
+
+		large.permit().close();
+		assertThat(control.tryAdmit(Transfer.UPLOAD, "user:2", DataSize.ofMegabytes(4).toBytes()).admitted()).isTrue();
+	}
+}
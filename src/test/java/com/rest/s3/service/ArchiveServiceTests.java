@@ -0,0 +1,115 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.model.FileAccess;
+import com.rest.s3.model.UploadState;
+
+// ZIP contents and object reads of ArchiveService, over a FileService serving in-memory files
+class ArchiveServiceTests {
+
+	private final FileService fileService = mock(FileService.class);
+	private final Map<Long, byte[]> contents = new HashMap<>();
+	// Range of every download requested, "" for the whole file
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private final AtomicInteger openBodies = new AtomicInteger();
+
+	ArchiveServiceTests() throws IOException {
+		when(fileService.download(any(FileAccess.class), anyString(), any(DownloadOptions.class))).thenAnswer(invocation -> {
+			FileAccess access = invocation.getArgument(0);
+			DownloadOptions options = invocation.getArgument(2);
+			byte[] content = contents.get(access.attachmentId());
+			requests.add(access.attachmentId() + ":" + (options.range() != null ? options.range() : ""));
+			int start = options.range() != null ? Integer.parseInt(options.range().replaceAll("\\D", "")) : 0;
+			if (start >= content.length) {
+				return new FileDownload(416, null, -1, "bytes */" + content.length, null, null);
+			}
+			openBodies.incrementAndGet();
+			InputStream body = new ByteArrayInputStream(content, start, content.length - start) {
+				private boolean closed;
+
+				@Override
+				public void close() {
+					if (!closed) {
+						closed = true;
+						openBodies.decrementAndGet();
+					}
+				}
+			};
+			return new FileDownload(options.range() != null ? 206 : 200, body, content.length - start, null, "\"e\"", Instant.now());
+		});
+	}
+
+	private FileAccess file(long id, int size, String codec) {
+		byte[] content = new byte[size];
+		new Random(id).nextBytes(content);
+		contents.put(id, content);
+		return new FileAccess(id, 1L, id + ".bin", "application/octet-stream", "key-" + id, codec, UploadState.COMMITTED);
+	}
+
+	private static ArchiveService archiveService(FileService fileService, DataSize readAhead, DataSize maxReadAheadMemory) {
+		return new ArchiveService(fileService, 100, 4, readAhead, maxReadAheadMemory, 4);
+	}
+
+	private Map<String, byte[]> unzip(byte[] archive) throws IOException {
+		Map<String, byte[]> entries = new HashMap<>();
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			for (ZipEntry entry; (entry = zip.getNextEntry()) != null;) {
+				entries.put(entry.getName(), zip.readAllBytes());
+			}
+		}
+		return entries;
+	}
+
+	@Test
+	void readsTheRestOfLargerFilesOnlyWhenTheirTurnComes() throws IOException {
+		List<FileAccess> files = List.of(file(1, 100, null), file(2, 5000, null), file(3, 1025, null), file(4, 5000, "gzip"));
+		ArchiveService archiveService = archiveService(fileService, DataSize.ofBytes(1024), DataSize.ofMegabytes(1));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		archiveService.writeArchive(files, out);
+
+		Map<String, byte[]> entries = unzip(out.toByteArray());
+		files.forEach(access -> assertThat(entries.get(access.fileName())).isEqualTo(contents.get(access.attachmentId())));
+		// The rest of a plain file is read by range; an encoded one is read again whole
+		assertThat(requests).containsExactlyInAnyOrder("1:", "2:", "2:bytes=1025-", "3:", "3:bytes=1025-", "4:", "4:");
+		assertThat(openBodies).hasValue(0);
+		archiveService.shutdown();
+	}
+
+	@Test
+	void opensFilesAtTheirTurnWithoutReadAheadMemory() throws IOException {
+		List<FileAccess> files = List.of(file(1, 100, null), file(2, 5000, null));
+		ArchiveService archiveService = archiveService(fileService, DataSize.ofBytes(1024), DataSize.ofBytes(1000));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		archiveService.writeArchive(files, out);
+
+		Map<String, byte[]> entries = unzip(out.toByteArray());
+		files.forEach(access -> assertThat(entries.get(access.fileName())).isEqualTo(contents.get(access.attachmentId())));
+		assertThat(requests).containsExactly("1:", "2:");
+		assertThat(openBodies).hasValue(0);
+		archiveService.shutdown();
+	}
+}
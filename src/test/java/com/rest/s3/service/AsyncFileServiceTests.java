@@ -0,0 +1,143 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.model.FileData;
+import com.rest.s3.model.UserData;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+// Uploads of AsyncFileService: single put vs multipart upload, and cleanup of failed uploads, against a mocked S3AsyncClient
+class AsyncFileServiceTests {
+
+	private static final int PART_SIZE = Math.toIntExact(DataSize.ofMegabytes(5).toBytes());
+
+	private final S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+	private final FileService fileService = mock(FileService.class);
+	private final AsyncFileService asyncFileService = new AsyncFileService(s3AsyncClient, "bucket", fileService,
+			mock(ContentCodec.class), DataSize.ofMegabytes(10), DataSize.ofBytes(PART_SIZE), 2, 2);
+	private final FileData fileData = new FileData();
+	// Calls made to S3, in order
+	private final List<String> calls = new CopyOnWriteArrayList<>();
+
+	@SuppressWarnings("unchecked")
+	AsyncFileServiceTests() {
+		fileData.setId(1L);
+		when(fileService.validateUpload(any(), any())).thenReturn(new UserData());
+		when(fileService.saveFileMetadata(any(), any(), any())).thenReturn(fileData);
+		when(fileService.assignObjectKey(fileData)).thenReturn("key");
+		when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+			calls.add("put");
+			return CompletableFuture.completedFuture(PutObjectResponse.builder().build());
+		});
+		when(s3AsyncClient.createMultipartUpload(any(Consumer.class))).thenAnswer(invocation -> {
+			calls.add("create");
+			return CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload").build());
+		});
+		when(s3AsyncClient.completeMultipartUpload(any(Consumer.class))).thenAnswer(invocation -> {
+			CompleteMultipartUploadRequest.Builder request = CompleteMultipartUploadRequest.builder();
+			invocation.<Consumer<CompleteMultipartUploadRequest.Builder>>getArgument(0).accept(request);
+			calls.add("complete " + request.build().multipartUpload().parts().stream().map(CompletedPart::partNumber).toList());
+			return CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build());
+		});
+		when(s3AsyncClient.abortMultipartUpload(any(Consumer.class))).thenAnswer(invocation -> {
+			calls.add("abort");
+			return CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build());
+		});
+	}
+
+	@AfterEach
+	void shutdown() {
+		asyncFileService.shutdown();
+	}
+
+	private static MockMultipartFile file(int size) {
+		return new MockMultipartFile("file", "a.png", "image/png", new byte[size]);
+	}
+
+	private static int partNumber(Consumer<UploadPartRequest.Builder> customizer) {
+		UploadPartRequest.Builder request = UploadPartRequest.builder();
+		customizer.accept(request);
+		return request.build().partNumber();
+	}
+
+	@Test
+	void sendsSmallFilesAsOnePut() throws IOException {
+		assertThat(asyncFileService.uploadFile(file(1024), 1L).join()).isEqualTo("File uploaded successfully: a.png");
+
+		assertThat(calls).containsExactly("put");
+		verify(fileService).commitUpload(fileData);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void uploadsLargeFilesInParts() throws IOException {
+		when(s3AsyncClient.uploadPart(any(Consumer.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+			int number = partNumber(invocation.getArgument(0));
+			calls.add("part " + number);
+			return CompletableFuture.completedFuture(UploadPartResponse.builder().eTag("\"" + number + "\"").build());
+		});
+
+		asyncFileService.uploadFile(file(2 * PART_SIZE + 1), 1L).join();
+
+		assertThat(calls).containsExactly("create", "part 1", "part 2", "part 3", "complete [1, 2, 3]");
+		verify(fileService).commitUpload(fileData);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void abortsAFailedMultipartUploadAndDiscardsTheRow() throws IOException {
+		when(s3AsyncClient.uploadPart(any(Consumer.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+			int number = partNumber(invocation.getArgument(0));
+			calls.add("part " + number);
+			return number == 2
+					? CompletableFuture.failedFuture(S3Exception.builder().statusCode(400).message("bad part").build())
+					: CompletableFuture.completedFuture(UploadPartResponse.builder().eTag("\"" + number + "\"").build());
+		});
+
+		CompletableFuture<String> upload = asyncFileService.uploadFile(file(3 * PART_SIZE), 1L);
+
+		assertThatThrownBy(upload::join).isInstanceOf(CompletionException.class);
+		assertThat(calls).startsWith("create").endsWith("abort").doesNotContain("complete [1, 2, 3]");
+		verify(fileService).discardUpload(fileData);
+		verify(fileService, never()).commitUpload(fileData);
+	}
+
+	@Test
+	void discardsTheRowWhenTheUploadCannotStart() {
+		when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+				.thenThrow(new IllegalStateException("client closed"));
+
+		assertThatThrownBy(() -> asyncFileService.uploadFile(file(1024), 1L)).isInstanceOf(IllegalStateException.class);
+		verify(fileService).discardUpload(fileData);
+	}
+}
@@ -0,0 +1,215 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rest.s3.cache.ObjectCache;
+import com.rest.s3.model.FileAccess;
+import com.rest.s3.model.StoredBlob;
+import com.rest.s3.model.UploadState;
+import com.rest.s3.repository.FileRepo;
+import com.rest.s3.repository.StoredBlobRepo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+
+// Reference counting of deduplicated blobs across BlobStore and FileDeletionService, against an in-memory
+// stored_blob table and bucket
+class BlobStoreTests {
+
+	private final Map<String, StoredBlob> blobs = new HashMap<>();
+	private final Set<String> objects = new HashSet<>();
+	// Run in place of the next DeleteObjects call, before it removes anything
+	private Runnable beforeDeleteObjects = () -> {
+	};
+
+	private final S3Client s3Client = mock(S3Client.class);
+	private final S3MultipartUploader s3Uploader = mock(S3MultipartUploader.class);
+	private final StoredBlobRepo blobRepo = blobRepo();
+	private final BlobStore blobStore = new BlobStore(blobRepo, s3Uploader, s3Client, "bucket", true);
+	private final FileDeletionService deletionService;
+
+	private final MockMultipartFile file = new MockMultipartFile("file", "a.png", "image/png", "same bytes".getBytes());
+
+	@SuppressWarnings("unchecked")
+	BlobStoreTests() throws IOException {
+		doAnswer(invocation -> objects.add(invocation.getArgument(0))).when(s3Uploader)
+				.upload(anyString(), anyString(), any(InputStream.class), anyLong());
+		when(s3Client.deleteObject(any(Consumer.class))).thenAnswer(invocation -> {
+			DeleteObjectRequest.Builder request = DeleteObjectRequest.builder();
+			invocation.<Consumer<DeleteObjectRequest.Builder>>getArgument(0).accept(request);
+			objects.remove(request.build().key());
+			return DeleteObjectResponse.builder().build();
+		});
+		when(s3Client.deleteObjects(any(Consumer.class))).thenAnswer(invocation -> {
+			DeleteObjectsRequest.Builder request = DeleteObjectsRequest.builder();
+			invocation.<Consumer<DeleteObjectsRequest.Builder>>getArgument(0).accept(request);
+			Runnable before = beforeDeleteObjects;
+			beforeDeleteObjects = () -> {
+			};
+			before.run();
+			request.build().delete().objects().stream().map(ObjectIdentifier::key).forEach(objects::remove);
+			return DeleteObjectsResponse.builder().build();
+		});
+
+		FileService fileService = mock(FileService.class);
+		when(fileService.storageKey(any(FileAccess.class), anyString())).thenAnswer(invocation ->
+				invocation.<FileAccess>getArgument(0).storageKey());
+		TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+		when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+				invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		deletionService = new FileDeletionService(s3Client, "bucket", mock(FileRepo.class), blobRepo, fileService,
+				mock(ThumbnailService.class), mock(ObjectCache.class), mock(CacheInvalidator.class), mock(UploadSpool.class),
+				transactionTemplate, new SimpleMeterRegistry(), 1000);
+	}
+
+	private static FileAccess access(long attachmentId, String storageKey) {
+		return new FileAccess(attachmentId, 1L, "a.png", "image/png", storageKey, null, UploadState.COMMITTED);
+	}
+
+	@Test
+	void sharedBlobIsDeletedWithItsLastReference() throws IOException {
+		BlobStore.StoredContent first = blobStore.store(file);
+		BlobStore.StoredContent second = blobStore.store(file);
+
+		assertThat(first.uploaded()).isTrue();
+		assertThat(second.uploaded()).isFalse();
+		assertThat(second.storageKey()).isEqualTo(first.storageKey());
+		assertThat(blobs.get(first.digest()).getRefCount()).isEqualTo(2);
+
+		deletionService.delete(List.of(access(1L, first.storageKey())), "request");
+		assertThat(objects).containsExactly(first.storageKey());
+		assertThat(blobs.get(first.digest()).getRefCount()).isEqualTo(1);
+
+		deletionService.delete(List.of(access(2L, second.storageKey())), "request");
+		assertThat(objects).isEmpty();
+		assertThat(blobs).isEmpty();
+	}
+
+	@Test
+	void contentStoredAgainWhileItsLastReferenceIsDeletedSurvives() throws IOException {
+		BlobStore.StoredContent first = blobStore.store(file);
+		AtomicReference<BlobStore.StoredContent> again = new AtomicReference<>();
+		// The blob row is gone but its object is not deleted yet when the same bytes are uploaded again
+		beforeDeleteObjects = () -> {
+			try {
+				again.set(blobStore.store(file));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+
+		deletionService.delete(List.of(access(1L, first.storageKey())), "request");
+
+		assertThat(again.get().uploaded()).isTrue();
+		assertThat(again.get().storageKey()).isNotEqualTo(first.storageKey());
+		assertThat(objects).containsExactly(again.get().storageKey());
+		assertThat(blobs.get(first.digest()).getStorageKey()).isEqualTo(again.get().storageKey());
+		assertThat(blobs.get(first.digest()).getRefCount()).isEqualTo(1);
+	}
+
+	@Test
+	void concurrentFirstUploadsRegisterOneBlob() throws IOException {
+		AtomicBoolean raced = new AtomicBoolean();
+		AtomicReference<BlobStore.StoredContent> other = new AtomicReference<>();
+		// Another upload of the same new content registers it while this one is still uploading
+		doAnswer(invocation -> {
+			objects.add(invocation.getArgument(0));
+			if (raced.compareAndSet(false, true)) {
+				other.set(blobStore.store(file));
+			}
+			return null;
+		}).when(s3Uploader).upload(anyString(), anyString(), any(InputStream.class), anyLong());
+
+		BlobStore.StoredContent content = blobStore.store(file);
+
+		assertThat(other.get().uploaded()).isTrue();
+		assertThat(content.uploaded()).isFalse();
+		assertThat(content.storageKey()).isEqualTo(other.get().storageKey());
+		assertThat(objects).containsExactly(content.storageKey());
+		assertThat(blobs.get(content.digest()).getRefCount()).isEqualTo(2);
+	}
+
+	@Test
+	void releasedReferenceOfADiscardedUploadDeletesAnUnsharedBlob() throws IOException {
+		BlobStore.StoredContent first = blobStore.store(file);
+		BlobStore.StoredContent second = blobStore.store(file);
+
+		blobStore.release(second.storageKey());
+		assertThat(objects).containsExactly(first.storageKey());
+		assertThat(blobs.get(first.digest()).getRefCount()).isEqualTo(1);
+
+		blobStore.release(first.storageKey());
+		assertThat(objects).isEmpty();
+		assertThat(blobs).isEmpty();
+	}
+
+	// The queries of StoredBlobRepo that BlobStore and FileDeletionService use, over the blobs map
+	@SuppressWarnings("unchecked")
+	private StoredBlobRepo blobRepo() {
+		StoredBlobRepo repo = mock(StoredBlobRepo.class);
+		when(repo.incrementRefCount(anyString())).thenAnswer(invocation -> {
+			StoredBlob blob = blobs.get(invocation.<String>getArgument(0));
+			if (blob == null) {
+				return 0;
+			}
+			blob.setRefCount(blob.getRefCount() + 1);
+			return 1;
+		});
+		when(repo.findById(anyString())).thenAnswer(invocation -> Optional.ofNullable(blobs.get(invocation.<String>getArgument(0))));
+		when(repo.insertIfAbsent(anyString(), anyString(), anyLong(), any(LocalDateTime.class))).thenAnswer(invocation -> {
+			String digest = invocation.getArgument(0);
+			StoredBlob blob = new StoredBlob(digest, invocation.getArgument(1), invocation.getArgument(2), 1,
+					invocation.getArgument(3));
+			return blobs.putIfAbsent(digest, blob) == null ? 1 : 0;
+		});
+		when(repo.findStorageKeysIn(any(Collection.class))).thenAnswer(invocation -> blobs.values().stream()
+				.map(StoredBlob::getStorageKey).filter(invocation.<Collection<String>>getArgument(0)::contains).toList());
+		when(repo.decrementRefCounts(any(Collection.class), anyLong())).thenAnswer(invocation -> {
+			Collection<String> keys = invocation.getArgument(0);
+			long count = invocation.getArgument(1);
+			blobs.values().stream().filter(blob -> keys.contains(blob.getStorageKey()))
+					.forEach(blob -> blob.setRefCount(blob.getRefCount() - count));
+			return keys.size();
+		});
+		when(repo.findUnreferencedStorageKeysIn(any(Collection.class))).thenAnswer(invocation -> blobs.values().stream()
+				.filter(blob -> blob.getRefCount() <= 0).map(StoredBlob::getStorageKey)
+				.filter(invocation.<Collection<String>>getArgument(0)::contains).toList());
+		when(repo.deleteUnreferenced(any(Collection.class))).thenAnswer(invocation -> {
+			Collection<String> keys = invocation.getArgument(0);
+			int before = blobs.size();
+			blobs.values().removeIf(blob -> keys.contains(blob.getStorageKey()) && blob.getRefCount() <= 0);
+			return before - blobs.size();
+		});
+		return repo;
+	}
+}
@@ -0,0 +1,80 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+class ContentCodecTests {
+
+	private static final String DOCX = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+	private final ContentCodec codec = new ContentCodec(true, DataSize.ofKilobytes(64), DataSize.ofKilobytes(4), 0.9, 6);
+
+	private static byte[] text(int size) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; text.length() < size; i++) {
+			text.append("<w:p><w:r><w:t>Paragraph ").append(i).append("</w:t></w:r></w:p>\n");
+		}
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void compressesCompressibleContentAndRoundTrips() throws IOException {
+		byte[] content = text(1_000_000);
+
+		ContentCodec.Encoded encoded = codec.encode(new ByteArrayInputStream(content), DOCX, content.length);
+		byte[] stored;
+		try (InputStream in = encoded.stream()) {
+			stored = in.readAllBytes();
+		}
+
+		assertThat(encoded.codec()).isEqualTo(ContentCodec.GZIP);
+		assertThat(encoded.size()).isEqualTo(-1);
+		assertThat(stored.length).isLessThan(content.length / 5);
+		assertThat(new GZIPInputStream(new ByteArrayInputStream(stored)).readAllBytes()).isEqualTo(content);
+	}
+
+	@Test
+	void storesIncompressibleAndImageContentAsUploaded() throws IOException {
+		byte[] random = new byte[200_000];
+		new Random(1).nextBytes(random);
+
+		ContentCodec.Encoded incompressible = codec.encode(new ByteArrayInputStream(random), DOCX, -1);
+		assertThat(incompressible.codec()).isNull();
+		assertThat(incompressible.stream().readAllBytes()).isEqualTo(random);
+
+		byte[] image = text(100_000);
+		ContentCodec.Encoded png = codec.encode(new ByteArrayInputStream(image), "image/png", image.length);
+		assertThat(png.codec()).isNull();
+		assertThat(png.size()).isEqualTo(image.length);
+	}
+
+	@Test
+	void smallContentKeepsItsKnownSize() throws IOException {
+		byte[] small = text(1000);
+
+		ContentCodec.Encoded encoded = codec.encode(new ByteArrayInputStream(small), DOCX, -1);
+
+		assertThat(encoded.codec()).isNull();
+		assertThat(encoded.size()).isEqualTo(small.length);
+		assertThat(encoded.stream().readAllBytes()).isEqualTo(small);
+	}
+
+	@Test
+	void parsesAcceptEncoding() {
+		assertThat(ContentCodec.acceptsGzip("gzip, deflate, br")).isTrue();
+		assertThat(ContentCodec.acceptsGzip("br;q=1.0, gzip;q=0.8")).isTrue();
+		assertThat(ContentCodec.acceptsGzip("*")).isTrue();
+		assertThat(ContentCodec.acceptsGzip("gzip;q=0, *")).isFalse();
+		assertThat(ContentCodec.acceptsGzip("identity")).isFalse();
+		assertThat(ContentCodec.acceptsGzip(null)).isFalse();
+	}
+}
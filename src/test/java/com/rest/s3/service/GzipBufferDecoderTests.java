@@ -0,0 +1,75 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+class GzipBufferDecoderTests {
+
+	private static byte[] content() {
+		byte[] content = new byte[200_000];
+		Random random = new Random(1);
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ('a' + random.nextInt(4));
+		}
+		return content;
+	}
+
+	// Feed the encoded bytes in buffers of the given size and collect the output
+	private static byte[] decode(byte[] encoded, int bufferSize) {
+		GzipBufferDecoder decoder = new GzipBufferDecoder();
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		for (int offset = 0; offset < encoded.length; offset += bufferSize) {
+			ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOfRange(encoded, offset, Math.min(encoded.length, offset + bufferSize)));
+			for (ByteBuffer out : decoder.decode(buffer)) {
+				decoded.write(out.array(), out.arrayOffset() + out.position(), out.remaining());
+			}
+		}
+		decoder.end();
+		return decoded.toByteArray();
+	}
+
+	@Test
+	void decodesStoredEncodingAcrossBufferBoundaries() throws IOException {
+		byte[] content = content();
+		byte[] encoded = new GzipEncodingInputStream(new ByteArrayInputStream(content), 6).readAllBytes();
+
+		assertThat(decode(encoded, 1)).isEqualTo(content);
+		assertThat(decode(encoded, 7)).isEqualTo(content);
+		assertThat(decode(encoded, 65536)).isEqualTo(content);
+	}
+
+	@Test
+	void skipsOptionalHeaderFields() throws IOException {
+		byte[] content = content();
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		// FEXTRA, FNAME, FCOMMENT and FHCRC set
+		encoded.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4 | 8 | 16 | 2, 0, 0, 0, 0, 0, (byte) 0xff });
+		encoded.write(new byte[] { 3, 0, 'x', 'y', 'z' });
+		encoded.write("name.txt\0comment\0".getBytes());
+		encoded.write(new byte[] { 0, 0 });
+		try (DeflaterOutputStream deflate = new DeflaterOutputStream(encoded, new Deflater(6, true))) {
+			deflate.write(content);
+		}
+		byte[] bytes = encoded.toByteArray();
+
+		assertThat(decode(bytes, 3)).isEqualTo(content);
+		assertThat(decode(bytes, bytes.length)).isEqualTo(content);
+	}
+
+	@Test
+	void rejectsBodiesThatAreNotGzip() {
+		assertThatThrownBy(() -> decode("plain text, not encoded".getBytes(), 64)).isInstanceOf(UncheckedIOException.class);
+	}
+}
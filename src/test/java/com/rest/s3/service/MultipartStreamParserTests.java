@@ -0,0 +1,88 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MultipartStreamParserTests {
+
+	private static final String BOUNDARY = "----boundary42";
+
+	private static byte[] body(byte[] fileContent) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(("preamble\r\n--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"userId\"\r\n\r\n"
+				+ "7\r\n--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"C:\\\\docs\\\\photo.png\"\r\n"
+				+ "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		out.write(fileContent);
+		out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return out.toByteArray();
+	}
+
+	// Hands out at most a few bytes per read, like a slow network stream
+	private static InputStream trickle(byte[] data) {
+		return new ByteArrayInputStream(data) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 7));
+			}
+		};
+	}
+
+	@Test
+	void parsesFieldsAndFileAcrossBufferBoundaries() throws IOException {
+		byte[] content = new byte[200_000];
+		new Random(1).nextBytes(content);
+		// Embed something that looks like the start of a delimiter
+		System.arraycopy("\r\n--".getBytes(StandardCharsets.UTF_8), 0, content, 1000, 4);
+
+		MultipartStreamParser parser = new MultipartStreamParser(trickle(body(content)), BOUNDARY);
+
+		MultipartStreamParser.Part field = parser.nextPart();
+		assertThat(field.name()).isEqualTo("userId");
+		assertThat(field.fileName()).isNull();
+		assertThat(new String(field.body().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("7");
+
+		MultipartStreamParser.Part file = parser.nextPart();
+		assertThat(file.name()).isEqualTo("file");
+		assertThat(file.fileName()).isEqualTo("photo.png");
+		assertThat(file.contentType()).isEqualTo("image/png");
+		assertThat(file.body().readAllBytes()).isEqualTo(content);
+
+		assertThat(parser.nextPart()).isNull();
+	}
+
+	@Test
+	void skipsUnreadPartBodies() throws IOException {
+		MultipartStreamParser parser = new MultipartStreamParser(new ByteArrayInputStream(body(new byte[10])), BOUNDARY);
+		parser.nextPart();
+		assertThat(parser.nextPart().fileName()).isEqualTo("photo.png");
+		assertThat(parser.nextPart()).isNull();
+	}
+
+	@Test
+	void failsOnTruncatedBody() throws IOException {
+		byte[] body = body(new byte[100]);
+		byte[] truncated = java.util.Arrays.copyOf(body, body.length - 20);
+		MultipartStreamParser parser = new MultipartStreamParser(new ByteArrayInputStream(truncated), BOUNDARY);
+		parser.nextPart();
+		InputStream file = parser.nextPart().body();
+		assertThatThrownBy(file::readAllBytes).isInstanceOf(IOException.class);
+	}
+
+	@Test
+	void extractsBoundaryFromContentType() {
+		assertThat(MultipartStreamParser.boundaryOf("multipart/form-data; boundary=\"abc def\"")).isEqualTo("abc def");
+		assertThat(MultipartStreamParser.boundaryOf("multipart/form-data; charset=UTF-8; boundary=xyz")).isEqualTo("xyz");
+		assertThatThrownBy(() -> MultipartStreamParser.boundaryOf("application/json")).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,135 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import com.rest.s3.metrics.S3Metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+// Single put vs multipart upload, and the abort of a failed multipart upload, against a mocked S3Client
+class S3MultipartUploaderTests {
+
+	private static final int PART_SIZE = Math.toIntExact(DataSize.ofMegabytes(5).toBytes());
+
+	private final S3Client s3Client = mock(S3Client.class);
+	private final S3MultipartUploader uploader = new S3MultipartUploader(s3Client, new S3Metrics(new SimpleMeterRegistry()),
+			"bucket", DataSize.ofMegabytes(10), DataSize.ofBytes(PART_SIZE), 4, 4, Duration.ZERO);
+	// Calls made to S3, in order
+	private final List<String> calls = new CopyOnWriteArrayList<>();
+
+	@SuppressWarnings("unchecked")
+	S3MultipartUploaderTests() {
+		when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+			calls.add("put");
+			return PutObjectResponse.builder().build();
+		});
+		when(s3Client.createMultipartUpload(any(Consumer.class))).thenAnswer(invocation -> {
+			calls.add("create");
+			return CreateMultipartUploadResponse.builder().uploadId("upload").build();
+		});
+		when(s3Client.completeMultipartUpload(any(Consumer.class))).thenAnswer(invocation -> {
+			CompleteMultipartUploadRequest.Builder request = CompleteMultipartUploadRequest.builder();
+			invocation.<Consumer<CompleteMultipartUploadRequest.Builder>>getArgument(0).accept(request);
+			calls.add("complete " + request.build().multipartUpload().parts().stream().map(CompletedPart::partNumber).toList());
+			return CompleteMultipartUploadResponse.builder().build();
+		});
+		when(s3Client.abortMultipartUpload(any(Consumer.class))).thenAnswer(invocation -> {
+			AbortMultipartUploadRequest.Builder request = AbortMultipartUploadRequest.builder();
+			invocation.<Consumer<AbortMultipartUploadRequest.Builder>>getArgument(0).accept(request);
+			calls.add("abort " + request.build().uploadId());
+			return AbortMultipartUploadResponse.builder().build();
+		});
+	}
+
+	private static int partNumber(Consumer<UploadPartRequest.Builder> customizer) {
+		UploadPartRequest.Builder request = UploadPartRequest.builder();
+		customizer.accept(request);
+		return request.build().partNumber();
+	}
+
+	private static ByteArrayInputStream content(int length) {
+		return new ByteArrayInputStream(new byte[length]);
+	}
+
+	@Test
+	void sendsSmallObjectsAsOnePut() throws IOException {
+		uploader.upload("small", "image/png", content(1024), 1024);
+		uploader.upload("unknown", "image/png", content(1024), -1);
+
+		assertThat(calls).containsExactly("put", "put");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void uploadsLargeObjectsInParts() throws IOException {
+		when(s3Client.uploadPart(any(Consumer.class), any(RequestBody.class))).thenAnswer(invocation -> {
+			int number = partNumber(invocation.getArgument(0));
+			calls.add("part " + number);
+			return UploadPartResponse.builder().eTag("\"" + number + "\"").build();
+		});
+
+		uploader.upload("large", "image/png", content(2 * PART_SIZE + 1), -1);
+
+		assertThat(calls).startsWith("create").endsWith("complete [1, 2, 3]")
+				.contains("part 1", "part 2", "part 3").hasSize(5);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void abortsOnlyAfterThePartsInFlightHaveFinished() throws InterruptedException {
+		CountDownLatch secondStarted = new CountDownLatch(1);
+		when(s3Client.uploadPart(any(Consumer.class), any(RequestBody.class))).thenAnswer(invocation -> {
+			int number = partNumber(invocation.getArgument(0));
+			if (number == 1) {
+				// Fail once the second part is on the wire
+				secondStarted.await(5, TimeUnit.SECONDS);
+				throw S3Exception.builder().statusCode(400).message("bad part").build();
+			}
+			if (number == 2) {
+				secondStarted.countDown();
+				Thread.sleep(200);
+			}
+			calls.add("part " + number);
+			return UploadPartResponse.builder().eTag("\"" + number + "\"").build();
+		});
+
+		assertThatThrownBy(() -> uploader.upload("large", "image/png", content(2 * PART_SIZE), 2 * PART_SIZE))
+				.isInstanceOf(S3Exception.class);
+
+		assertThat(calls).contains("part 2").endsWith("abort upload");
+		assertThat(Collections.frequency(calls, "abort upload")).isEqualTo(1);
+		verify(s3Client, never()).completeMultipartUpload(any(Consumer.class));
+	}
+}
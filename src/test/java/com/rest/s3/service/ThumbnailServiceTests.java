@@ -0,0 +1,82 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+// Validators and conditional requests of thumbnails, over a mocked FileService
+class ThumbnailServiceTests {
+
+	private static final Instant SOURCE_MODIFIED = Instant.parse("2026-01-01T10:00:00Z");
+
+	private final FileService fileService = mock(FileService.class);
+	private final ThumbnailService thumbnails = new ThumbnailService(fileService, mock(S3MultipartUploader.class),
+			new int[] { 64, 256 }, 40_000_000, 0.85f, 1, 4);
+
+	ThumbnailServiceTests() throws IOException {
+		when(fileService.getFileContentType(anyString())).thenReturn("image/jpeg");
+		when(fileService.storageKey(any(), anyString())).thenReturn("direct/abc");
+		when(fileService.objectValidators("direct/abc"))
+				.thenReturn(new FileDownload(200, null, 1000, null, "\"source-etag\"", SOURCE_MODIFIED));
+	}
+
+	@Test
+	void variantETagCombinesTheSourceETagWithTheVariant() {
+		assertThat(ThumbnailService.variantETag("\"source-etag\"", 256, "jpeg")).isEqualTo("W/\"source-etag-w256.jpg\"");
+		assertThat(ThumbnailService.variantETag("W/\"source-etag\"", 64, "png")).isEqualTo("W/\"source-etag-w64.png\"");
+		assertThat(ThumbnailService.variantETag(null, 64, "png")).isNull();
+	}
+
+	@Test
+	void matchingIfNoneMatchIsAnsweredWithoutReadingTheVariant() throws IOException {
+		DownloadOptions options = new DownloadOptions(null, "W/\"source-etag-w256.jpg\"", null, false);
+
+		FileDownload download = thumbnails.download("photo.jpg", 1L, 2L, 200, null, options).download();
+
+		assertThat(download.getStatus()).isEqualTo(304);
+		assertThat(download.getETag()).isEqualTo("W/\"source-etag-w256.jpg\"");
+		verify(fileService, never()).downloadObject(anyString(), any(DownloadOptions.class), anyBoolean());
+	}
+
+	@Test
+	void ifModifiedSinceTheSourceChangeIsAnsweredWithNotModified() throws IOException {
+		DownloadOptions options = new DownloadOptions(null, null, SOURCE_MODIFIED, false);
+
+		FileDownload download = thumbnails.download("photo.jpg", 1L, 2L, 64, null, options).download();
+
+		assertThat(download.getStatus()).isEqualTo(304);
+		verify(fileService, never()).downloadObject(anyString(), any(DownloadOptions.class), anyBoolean());
+	}
+
+	@Test
+	void storedVariantIsSentWithTheVariantValidators() throws IOException {
+		when(fileService.downloadObject(eq("derived/direct/abc/w256.jpg"), any(DownloadOptions.class), eq(true)))
+				.thenReturn(new FileDownload(200, new ByteArrayInputStream(new byte[10]), 10, null, "\"stored-etag\"",
+						Instant.parse("2026-02-01T10:00:00Z")));
+		DownloadOptions options = new DownloadOptions(null, "\"stale\"", null, false);
+
+		FileDownload download = thumbnails.download("photo.jpg", 1L, 2L, 256, "jpg", options).download();
+
+		assertThat(download.getStatus()).isEqualTo(200);
+		assertThat(download.getETag()).isEqualTo("W/\"source-etag-w256.jpg\"");
+		assertThat(download.getLastModified()).isEqualTo(SOURCE_MODIFIED);
+		// The client's conditionals refer to the variant ETag, not to the stored object's
+		ArgumentCaptor<DownloadOptions> forwarded = ArgumentCaptor.forClass(DownloadOptions.class);
+		verify(fileService).downloadObject(eq("derived/direct/abc/w256.jpg"), forwarded.capture(), eq(true));
+		assertThat(forwarded.getValue().ifNoneMatch()).isNull();
+		assertThat(forwarded.getValue().ifModifiedSince()).isNull();
+	}
+}
@@ -0,0 +1,80 @@
+package com.rest.s3.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.rest.s3.model.UserData;
+
+class UserValidatorTests {
+
+	private final UserValidator validator = new UserValidator();
+
+	private static UserData user(String username, String email) {
+		UserData user = new UserData();
+		user.setUsername(username);
+		user.setEmail(email);
+		return user;
+	}
+
+	private String messageFor(String username, String email) {
+		try {
+			validator.validate(user(username, email));
+			return null;
+		} catch (IllegalArgumentException e) {
+			return e.getMessage();
+		}
+	}
+
+	@Test
+	void acceptsValidUser() {
+		assertThat(messageFor("alice42", "alice.smith+s3@mail.example.com")).isNull();
+	}
+
+	@Test
+	void reportsRulesInOriginalOrder() {
+		assertThat(messageFor(" ", "a@b.co")).isEqualTo("Username cannot be empty");
+		assertThat(messageFor("alice", null)).isEqualTo("Email cannot be empty");
+		assertThat(messageFor("al", "bad")).isEqualTo("Username must be between 3 and 20 characters.");
+		assertThat(messageFor("a b!", "1bad@x.com")).isEqualTo("Invalid email format.");
+		assertThat(messageFor("a b!", "a" + "b".repeat(250) + "@x.com")).isEqualTo("Email is too long. Maximum length is 254 characters.");
+		assertThat(messageFor("a b!", "a@x.com")).isEqualTo("Username cannot contain spaces.");
+		assertThat(messageFor("ab_c", "a@x.com")).isEqualTo("Username cannot contain special characters.");
+		assertThat(messageFor("1abc", "a@x.com")).isEqualTo("Username must start with a letter.");
+	}
+
+	@Test
+	void emailFormatMatchesOriginalRegex() {
+		String[] samples = { "a@b.co", "a@b.c", "a@.co", "a@b..co", "a@b.c0", "a@b-c.io", "a.b_c%d+e-f@x.org", "a@@b.co",
+				"a@b.co@c.de", "a b@c.de", "_a@b.co", "a@b_c.de", "a@", "@b.co", "ab", "a@b.co.", "a@b.co\n", "é@b.co" };
+		for (String email : samples) {
+			assertThat(UserValidator.isValidEmailFormat(email)).as(email).isEqualTo(regexFormat(email));
+		}
+
+		// Random strings over the characters that matter to the pattern
+		String alphabet = "aZ9.@-_%+ x";
+		Random random = new Random(42);
+		for (int n = 0; n < 20000; n++) {
+			StringBuilder email = new StringBuilder();
+			int length = 1 + random.nextInt(12);
+			for (int i = 0; i < length; i++) {
+				email.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			assertThat(UserValidator.isValidEmailFormat(email.toString())).as(email.toString()).isEqualTo(regexFormat(email.toString()));
+		}
+	}
+
+	@Test
+	void rejectsNonAsciiUsernameCharacters() {
+		assertThatThrownBy(() -> validator.validate(user("jürgen", "j@x.de")))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Username cannot contain special characters.");
+	}
+
+	private static boolean regexFormat(String email) {
+		return email.matches("^[A-Za-z][A-Za-z0-9._%+-]*@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
+	}
+}